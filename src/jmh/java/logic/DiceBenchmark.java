@@ -0,0 +1,64 @@
+package logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing dice pools and rolling them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiceBenchmark {
+
+    //Number of regular dice in the pool. Every pool also has a pd6.
+    @Param({"1", "2", "4", "8", "16", "32"})
+    private int poolSize;
+
+    private String command;
+    private DiceRoller roller;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        StringBuilder pool = new StringBuilder("~r");
+        int[] faces = {4, 6, 8, 10, 12};
+        for (int i = 0; i < poolSize; i++) {
+            pool.append(" d").append(faces[i % faces.length]);
+        }
+        command = pool.append(" pd6").toString();
+        roller = new DiceRoller(command);
+        random = new Random(42);
+    }
+
+    @Benchmark
+    public ArrayList<Integer> addDiceToPools() {
+        ArrayList<Integer> regDice = new ArrayList<>();
+        ArrayList<Integer> plotDice = new ArrayList<>();
+        new DiceParameterHandler(new ArrayList<>(Arrays.asList(command.split(" "))), regDice, plotDice)
+                .addDiceToPools();
+        return regDice;
+    }
+
+    @Benchmark
+    public int generateResults() {
+        return roller.roll(random, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+    }
+}
@@ -0,0 +1,88 @@
+package logic;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that rolling, parsing and statistics stay inside their time and allocation budgets. Exits with status 1 if
+ * any of them is over, so it can gate a build (it runs in the bench profile, before the benchmarks).
+ */
+public class RollBudgets {
+
+    //Budgets per operation, with enough headroom for a busy machine
+    private static final double ROLL_NANOS = 5_000;
+    private static final double ROLL_BYTES = 2_048;
+    private static final double PARSE_NANOS = 5_000;
+    private static final double STATISTICS_MILLIS = 1_500;
+    private static final String STATISTICS_POOL = "d4 d6 d8 d10 d12 pd6";
+    private static final int ITERATIONS = 200_000;
+
+    private final List<String> failures = new ArrayList<>();
+
+    public static void main(String[] args) {
+        RollBudgets budgets = new RollBudgets();
+        budgets.checkBudgets(new Random(42));
+        if (!budgets.failures.isEmpty()) {
+            System.out.println("FAILED:");
+            budgets.failures.forEach(failure -> System.out.println("  " + failure));
+            System.exit(1);
+        }
+        System.out.println("All budgets met");
+    }
+
+    private void checkBudgets(Random random) {
+        DiceRoller roller = new DiceRoller("d6 d8 d10 d12 pd6");
+        ArrayList<Integer> diceResults = new ArrayList<>();
+        ArrayList<Integer> pdResults = new ArrayList<>();
+        ArrayList<Integer> topTwo = new ArrayList<>();
+        ArrayList<Integer> dropped = new ArrayList<>();
+        //Warm up the JIT before measuring
+        measure(ITERATIONS, () -> roller.roll(random, new ArrayList<>(), new ArrayList<>(), new ArrayList<>(),
+                new ArrayList<>()));
+        double[] roll = measure(ITERATIONS, () -> {
+            diceResults.clear();
+            pdResults.clear();
+            topTwo.clear();
+            dropped.clear();
+            roller.roll(random, diceResults, pdResults, topTwo, dropped);
+        });
+        budget("roll", roll[0], ROLL_NANOS, "ns");
+        budget("roll allocation", roll[1], ROLL_BYTES, "bytes");
+
+        List<String> command = Arrays.asList("~r d6 d8 d10 d12 pd6".split(" "));
+        Runnable parse = () -> new DiceParameterHandler(new ArrayList<>(command), new ArrayList<>(), new ArrayList<>())
+                .addDiceToPools();
+        measure(ITERATIONS, parse);
+        budget("parse", measure(ITERATIONS, parse)[0], PARSE_NANOS, "ns");
+
+        new StatisticsGenerator(STATISTICS_POOL, false);
+        double statistics = measure(3, () -> new StatisticsGenerator(STATISTICS_POOL, false))[0] / 1e6;
+        budget("statistics for " + STATISTICS_POOL, statistics, STATISTICS_MILLIS, "ms");
+    }
+
+    private void budget(String name, double actual, double budget, String unit) {
+        boolean passed = actual <= budget;
+        System.out.printf("%-28s %10.1f %-5s budget %8.0f %-5s %s%n", name, actual, unit, budget, unit,
+                passed ? "ok" : "FAIL");
+        if (!passed) {
+            failures.add(String.format("%s: %.1f %s is over the %.0f %s budget", name, actual, unit, budget, unit));
+        }
+    }
+
+    //Returns the average nanoseconds and bytes allocated per run
+    private static double[] measure(int iterations, Runnable operation) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        return new double[]{(double) elapsed / iterations, (double) allocated / iterations};
+    }
+}
@@ -0,0 +1,59 @@
+package logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import sheets.CharacterSheet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Converting skill names into dice against a stubbed character sheet the size of a real one
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SkillResolutionBenchmark {
+
+    //A skill near the top of the sheet, one near the bottom, one over d12, one cut short, one misspelled and one that
+    //doesn't exist
+    @Param({"athletics", "skill260", "euphemanudance", "athletic", "atheltics", "missing"})
+    private String skill;
+
+    private CharacterSheet sheet;
+
+    @Setup
+    public void setUp() {
+        List<List<Object>> rows = new ArrayList<>();
+        rows.add(Arrays.asList("Athletics", "8"));
+        rows.add(Arrays.asList("Euphemanu Dance", "26"));
+        for (int i = 2; i < 270; i++) {
+            rows.add(Arrays.asList("Skill " + i, String.valueOf(4 + i % 9)));
+        }
+        sheet = new CharacterSheet(rows);
+    }
+
+    @Benchmark
+    public String retrieveDice() {
+        return CommandHandler.retrieveDice(skill, sheet);
+    }
+
+    @Benchmark
+    public List<String> suggestSkills() {
+        return sheet.suggestSkills(skill);
+    }
+}
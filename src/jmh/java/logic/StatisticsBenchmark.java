@@ -0,0 +1,52 @@
+package logic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generating statistics for pools of 1 to 6 dice, with and without plot dice
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatisticsBenchmark {
+
+    @Param({
+            "d8",
+            "d8 d10",
+            "d6 d8 d10",
+            "d6 d8 d10 d12",
+            "d4 d6 d8 d10 d12",
+            "d4 d6 d8 d10 d12 d12",
+            "d8 pd6",
+            "d8 d10 pd6",
+            "d6 d8 d10 pd8",
+            "d6 d8 d10 d12 pd4",
+            "d4 d6 d8 d10 pd6 pd8"
+    })
+    private String pool;
+
+    //Calculates the distribution every time, bypassing the StatisticsCache
+    @Benchmark
+    public StatisticsGenerator generateStatistics() {
+        return new StatisticsGenerator(pool, false);
+    }
+
+    @Benchmark
+    public StatisticsGenerator cachedStatistics() {
+        return new StatisticsGenerator(pool);
+    }
+}
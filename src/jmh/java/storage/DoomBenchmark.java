@@ -0,0 +1,67 @@
+package storage;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Doom updates as DoomWriter makes them: the pool itself, and the pool plus its history event. Runs on several
+ * threads since doom is updated by concurrent rolls.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class DoomBenchmark {
+
+    private File journalFile;
+    private File logFile;
+    private DoomPool pool;
+    private EventLog log;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        journalFile = File.createTempFile("doom", ".journal");
+        logFile = File.createTempFile("events", ".log");
+        pool = new DoomPool(new DoomJournal(journalFile.getPath()), 0);
+        log = new EventLog(logFile.getPath());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        pool.close();
+        log.flush();
+        journalFile.delete();
+        logFile.delete();
+        new File(logFile.getPath() + ".snapshot").delete();
+    }
+
+    @Benchmark
+    public int addDoom() {
+        return pool.add(1);
+    }
+
+    @Benchmark
+    public int addDoomWithHistory() {
+        int doom = pool.add(1);
+        log.recordDoom(HistoryEvent.Command.ROLL, "140973544891744256", 1, doom);
+        return doom;
+    }
+}
@@ -0,0 +1,91 @@
+package storage;
+
+import config.ConfigRegistry;
+import config.PlayerDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import sheets.IPlotPointMethods;
+import sheets.LocalSheetSource;
+import sheets.PPManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plot point reads and writes against each backend: a LocalPlotPointStore in a temporary file, and PPManager reading
+ * and writing the player's sheet the way it does in Google Sheets, here kept in a LocalSheetSource. The sheets
+ * numbers are the bot's own cost of the Sheets path, without the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlotPointBenchmark {
+
+    //Any ID will do, the store only needs it to be a number
+    private static final String PLAYER = "100000000000000001";
+    private static final String SHEET = "plot-point-benchmark";
+
+    @Param({"local", "sheets"})
+    private String backend;
+
+    private File file;
+    private LocalPlotPointStore localStore;
+    private IPlotPointMethods store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (backend.equals("local")) {
+            file = File.createTempFile("plotpoints", ".dat");
+            localStore = new LocalPlotPointStore(file.getPath());
+            store = localStore;
+        } else {
+            Map<String, Object> user = Collections.singletonMap("sid", SHEET);
+            ConfigRegistry.set(new Properties(), new Properties(), Collections.singletonMap(PLAYER, user));
+            PlayerDirectory players = ConfigRegistry.get().getPlayers();
+            store = new PPManager(() -> players, new LocalSheetSource());
+        }
+        store.setPlotPoints(PLAYER, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (localStore != null) {
+            localStore.close();
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public int getPlotPoints() {
+        return store.getPlotPoints(PLAYER);
+    }
+
+    //Reads a player's plot points and writes them back changed
+    @Benchmark
+    public int readThenSet() {
+        return store.setPlotPoints(PLAYER, store.getPlotPoints(PLAYER) + 1);
+    }
+
+    @Benchmark
+    public int addPlotPoints() {
+        return store.addPlotPoints(PLAYER, 1);
+    }
+}
@@ -0,0 +1,82 @@
+package audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * A fixed size ring of AuditRecords that any number of threads write to and one thread reads from, without locks.
+ * <p>
+ * A writer claims the next sequence with a compare-and-set, fills in the slot it maps to and publishes it. The reader
+ * takes slots in sequence order as they're published and frees them by moving its own sequence on. When every slot is
+ * waiting to be read the record is dropped and counted instead of making the writer wait, so logging can never hold up
+ * a command.
+ */
+final class AuditBuffer {
+
+    private final AuditRecord[] slots;
+    private final int mask;
+    //The next sequence a writer will claim
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    //The next sequence the reader will take. Only the reader changes it.
+    private volatile long consumed;
+
+    //capacity must be a power of two
+    AuditBuffer(int capacity) {
+        slots = new AuditRecord[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new AuditRecord();
+        }
+        mask = capacity - 1;
+    }
+
+    //Adds a record, or drops it if the buffer is full. Returns whether it was added.
+    boolean offer(AuditLog.Type type, String source, String actor, String message, Throwable error) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed >= slots.length) {
+                dropped.incrementAndGet();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        AuditRecord slot = slots[(int) sequence & mask];
+        slot.set(type, source, actor, message, error);
+        slot.published = sequence;
+        return true;
+    }
+
+    //Hands every published record to sink in order and frees their slots. Returns how many there were.
+    int drain(Consumer<AuditRecord> sink) {
+        long sequence = consumed;
+        int count = 0;
+        while (true) {
+            AuditRecord slot = slots[(int) sequence & mask];
+            //A claimed slot that hasn't been published yet holds back the records after it
+            if (slot.published != sequence) {
+                break;
+            }
+            sink.accept(slot);
+            slot.clear();
+            sequence++;
+            consumed = sequence;
+            count++;
+        }
+        return count;
+    }
+
+    //How many records have been added
+    long getClaimed() {
+        return claimed.get();
+    }
+
+    //How many records have been read
+    long getConsumed() {
+        return consumed;
+    }
+
+    //The number of records dropped since the last call
+    long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+}
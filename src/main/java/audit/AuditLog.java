@@ -0,0 +1,233 @@
+package audit;
+
+import config.ConfigRegistry;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A structured log of commands, changes to doom and plot points, and errors, so what happened around an incident can
+ * be pieced together afterwards.
+ * <p>
+ * Logging only fills in a slot of a preallocated AuditBuffer, so it takes no locks and never touches the disk or the
+ * console on the caller's thread. The "audit-log" thread writes the records to audit.file as one JSON object a line,
+ * moving it to audit.file.1 (and the older files along to audit.file.2 and so on, keeping audit.files of them) once it
+ * reaches audit.maxbytes. Errors and info messages are also written to the console by that thread.
+ */
+public final class AuditLog {
+
+    public enum Type {
+        COMMAND, MUTATION, ERROR, INFO
+    }
+
+    private static final int CAPACITY = 8192;
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long FLUSH_TIMEOUT_MILLIS = 5000;
+    private static final int DEFAULT_MAX_BYTES = 10 * 1024 * 1024;
+    private static final int DEFAULT_FILES = 5;
+
+    private static final AuditBuffer buffer = new AuditBuffer(CAPACITY);
+    //How many records have been read and written out
+    private static volatile long flushed;
+
+    //Only used by the writer thread
+    private static final StringBuilder line = new StringBuilder(512);
+    private static Path path;
+    private static OutputStream out;
+    private static long size;
+    private static long maxBytes;
+    private static int files;
+
+    static {
+        Thread writer = new Thread(AuditLog::write, "audit-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(AuditLog::flush, "audit-log-flush"));
+    }
+
+    private AuditLog() {
+    }
+
+    //A command as it was sent, or as it was rewritten once skills were swapped for dice
+    public static void command(String campaign, String actor, String content) {
+        buffer.offer(Type.COMMAND, campaign, actor, content, null);
+    }
+
+    //A change to shared state, e.g. "doom add 2 = 7"
+    public static void mutation(String campaign, String actor, String change) {
+        buffer.offer(Type.MUTATION, campaign, actor, change, null);
+    }
+
+    //Something that failed, with the exception that says why
+    public static void error(String source, String message, Throwable error) {
+        buffer.offer(Type.ERROR, source, null, message, error);
+    }
+
+    //Something an operator would want to see on the console, e.g. that the bot is ready
+    public static void info(String source, String message) {
+        buffer.offer(Type.INFO, source, null, message, null);
+    }
+
+    //Waits until everything logged so far has been written out
+    public static void flush() {
+        long target = buffer.getClaimed();
+        long deadline = System.currentTimeMillis() + FLUSH_TIMEOUT_MILLIS;
+        while (flushed < target && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(IDLE_NANOS);
+        }
+    }
+
+    private static void write() {
+        while (true) {
+            int count = buffer.drain(AuditLog::write);
+            long dropped = buffer.takeDropped();
+            if (dropped > 0) {
+                AuditRecord record = new AuditRecord();
+                record.set(Type.ERROR, "audit", null, "Dropped " + dropped + " records while the log was full", null);
+                write(record);
+            }
+            if (count == 0 && dropped == 0) {
+                LockSupport.parkNanos(IDLE_NANOS);
+                continue;
+            }
+            try {
+                if (out != null) {
+                    out.flush();
+                }
+            } catch (IOException e) {
+                closeAfterFailure(e);
+            }
+            flushed = buffer.getConsumed();
+        }
+    }
+
+    private static void write(AuditRecord record) {
+        String error = record.error != null ? stackTrace(record.error) : null;
+        if (record.type == Type.ERROR) {
+            System.err.println(record.message);
+            if (error != null) {
+                System.err.print(error);
+            }
+        } else if (record.type == Type.INFO) {
+            System.out.println(record.message);
+        }
+        line.setLength(0);
+        line.append("{\"time\":\"").append(Instant.ofEpochMilli(record.timestamp)).append("\",\"type\":\"")
+                .append(record.type.name().toLowerCase()).append('"');
+        appendField("thread", record.thread);
+        appendField("source", record.source);
+        appendField("actor", record.actor);
+        appendField("message", record.message);
+        appendField("error", error);
+        line.append("}\n");
+        append(line.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    //Writes a line to the current file, starting a new file first if the line would make it too big
+    private static void append(byte[] bytes) {
+        try {
+            if (path == null) {
+                open();
+            }
+            if (out == null) {
+                return;
+            }
+            if (size > 0 && size + bytes.length > maxBytes) {
+                rotate();
+            }
+            out.write(bytes);
+            size += bytes.length;
+        } catch (IOException e) {
+            closeAfterFailure(e);
+        }
+    }
+
+    private static void open() throws IOException {
+        path = Paths.get(ConfigRegistry.get().get("audit.file", ConfigRegistry.RESOURCES + "/audit.log"));
+        maxBytes = ConfigRegistry.get().getInt("audit.maxbytes", DEFAULT_MAX_BYTES);
+        files = Math.max(1, ConfigRegistry.get().getInt("audit.files", DEFAULT_FILES));
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        size = Files.exists(path) ? Files.size(path) : 0;
+        out = new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+    }
+
+    //Moves audit.log to audit.log.1, audit.log.1 to audit.log.2 and so on, dropping the oldest
+    private static void rotate() throws IOException {
+        out.close();
+        for (int i = files - 1; i >= 1; i--) {
+            Path older = Paths.get(path + "." + i);
+            if (Files.exists(older)) {
+                Files.move(older, Paths.get(path + "." + (i + 1)), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(path, Paths.get(path + ".1"), StandardCopyOption.REPLACE_EXISTING);
+        out = new BufferedOutputStream(Files.newOutputStream(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        size = 0;
+    }
+
+    //Gives up on the file, since it can't be written to. Errors and info still reach the console.
+    private static void closeAfterFailure(IOException e) {
+        System.err.println("Cannot write the audit log to " + path + ", logging to the console only");
+        e.printStackTrace();
+        try {
+            if (out != null) {
+                out.close();
+            }
+        } catch (IOException ignored) {
+        }
+        out = null;
+    }
+
+    private static void appendField(String name, String value) {
+        if (value == null) {
+            return;
+        }
+        line.append(",\"").append(name).append("\":\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    private static String stackTrace(Throwable error) {
+        StringWriter trace = new StringWriter();
+        error.printStackTrace(new PrintWriter(trace));
+        return trace.toString();
+    }
+}
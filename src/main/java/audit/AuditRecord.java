@@ -0,0 +1,37 @@
+package audit;
+
+/**
+ * One slot of the AuditBuffer. Slots are allocated once and reused, so logging only stores references to strings the
+ * caller already has. A slot is published by writing the sequence it was claimed for, after its fields are set.
+ */
+final class AuditRecord {
+
+    long timestamp;
+    AuditLog.Type type;
+    String thread;
+    String source;
+    String actor;
+    String message;
+    Throwable error;
+    //The sequence the fields belong to, or -1 before the slot is first used
+    volatile long published = -1;
+
+    void set(AuditLog.Type type, String source, String actor, String message, Throwable error) {
+        timestamp = System.currentTimeMillis();
+        thread = Thread.currentThread().getName();
+        this.type = type;
+        this.source = source;
+        this.actor = actor;
+        this.message = message;
+        this.error = error;
+    }
+
+    //Drops the references so the slot doesn't keep strings and stack traces alive until it's reused
+    void clear() {
+        thread = null;
+        source = null;
+        actor = null;
+        message = null;
+        error = null;
+    }
+}
@@ -0,0 +1,272 @@
+package campaign;
+
+import config.Config;
+import config.ConfigRegistry;
+import config.PlayerDirectory;
+import ledger.LedgerClient;
+import logic.RollRules;
+import sheets.CharacterCache;
+import sheets.IPlotPointMethods;
+import sheets.SheetsQuickstart;
+import storage.DoomPool;
+import storage.DoomStore;
+import storage.EventLog;
+import storage.HistoryStore;
+import storage.LocalPlotPointStore;
+import storage.PlotPointStorage;
+import storage.RollLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One campaign's state: its doom pool, plot points, history, players and character sheets, plus the threads its
+ * commands run on. Nothing is shared between campaigns, so a busy table can't hold up another one.
+ * <p>
+ * A campaign's settings come from bot.properties as campaign.&lt;name&gt;.&lt;setting&gt;. The default campaign,
+ * used when no campaigns are configured, reads the old unprefixed settings instead so existing setups keep working.
+ * Storage is opened the first time a campaign needs it. When the ledger setting names a LedgerServer, the doom pool,
+ * plot points and history live there instead, so every node of a cluster shares them. Character sheets are always
+ * cached locally.
+ */
+public class Campaign {
+
+    public static final String DEFAULT = "default";
+    //The channels the bot used before campaigns could be configured
+    private static final String DEFAULT_SESSION_CHANNEL = "468046159781429254";
+    private static final String DEFAULT_STARTUP_CHANNEL = "484544303247523840";
+    private static final int DEFAULT_THREADS = 2;
+
+    private final String name;
+    private final ExecutorService executor;
+    private final CharacterCache characters;
+    private volatile DoomPool doom;
+    private volatile EventLog history;
+    private volatile IPlotPointMethods plotPoints;
+    private volatile RollLog rolls;
+    private volatile DoomStore remoteDoom;
+    private volatile HistoryStore remoteHistory;
+    private volatile IPlotPointMethods remotePlotPoints;
+
+    Campaign(String name) {
+        this.name = name;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, getInt("threads", DEFAULT_THREADS)), runnable -> {
+            Thread thread = new Thread(runnable, "campaign-" + name + "-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.characters = new CharacterCache(get("sheet", SheetsQuickstart.CHARACTER_SPREADSHEET_ID),
+                this::getPlayers);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    //Runs a command on this campaign's threads
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    /**
+     * Stops taking commands and waits for the queued ones to finish
+     *
+     * @return False if some were still running at the deadline
+     */
+    public boolean drain(long deadlineNanos) throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Writes out the campaign's pending changes, giving up at a deadline
+     *
+     * @param deadline A System.nanoTime() to stop waiting at
+     * @return Whether everything was written to disk before the deadline
+     */
+    public boolean flush(long deadline) throws InterruptedException {
+        boolean flushed = true;
+        if (doom != null) {
+            flushed = doom.flush(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        if (history != null) {
+            flushed &= history.flush(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        if (rolls != null) {
+            flushed &= rolls.flush(remaining(deadline), TimeUnit.NANOSECONDS);
+        }
+        if (plotPoints instanceof LocalPlotPointStore) {
+            ((LocalPlotPointStore) plotPoints).flush();
+        }
+        return flushed;
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    public PlayerDirectory getPlayers() {
+        return ConfigRegistry.get().getPlayers(name);
+    }
+
+    public CharacterCache getCharacters() {
+        return characters;
+    }
+
+    //The voice channel the campaign's players join during a session, or null for none
+    public String getSessionChannelID() {
+        return get("session", isDefault() ? DEFAULT_SESSION_CHANNEL : null);
+    }
+
+    //The text channel the startup message is sent to, or null for none
+    public String getStartupChannelID() {
+        return get("startup", isDefault() ? DEFAULT_STARTUP_CHANNEL : null);
+    }
+
+    //The rules the campaign's dice are rolled by, from its rules.* settings
+    public RollRules getRules() {
+        return RollRules.of(get("rules.keep", null), get("rules.explode", null), get("rules.explode.limit", null),
+                get("rules.plotfloor", null));
+    }
+
+    public DoomStore getDoomPool() {
+        LedgerClient ledger = LedgerClient.getInstance();
+        if (ledger == null) {
+            return getLocalDoomPool();
+        }
+        if (remoteDoom == null) {
+            remoteDoom = ledger.doom(name);
+        }
+        return remoteDoom;
+    }
+
+    public HistoryStore getHistory() {
+        LedgerClient ledger = LedgerClient.getInstance();
+        if (ledger == null) {
+            return getLocalHistory();
+        }
+        if (remoteHistory == null) {
+            remoteHistory = ledger.history(name);
+        }
+        return remoteHistory;
+    }
+
+    public IPlotPointMethods getPlotPoints() {
+        LedgerClient ledger = LedgerClient.getInstance();
+        if (ledger == null) {
+            return getLocalPlotPoints();
+        }
+        if (remotePlotPoints == null) {
+            remotePlotPoints = ledger.plotPoints(name);
+        }
+        return remotePlotPoints;
+    }
+
+    //The doom pool kept by this process, which is what the ledger serves
+    public DoomPool getLocalDoomPool() {
+        if (doom == null) {
+            synchronized (this) {
+                if (doom == null) {
+                    try {
+                        doom = DoomPool.open(prepare(get("doom.journal", file("doom.journal"))), getInt("doom", 0));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Cannot open the doom journal for " + name, e);
+                    }
+                }
+            }
+        }
+        return doom;
+    }
+
+    public EventLog getLocalHistory() {
+        if (history == null) {
+            synchronized (this) {
+                if (history == null) {
+                    try {
+                        history = EventLog.open(prepare(get("events.log", file("events.log"))));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Cannot open the event log for " + name, e);
+                    }
+                }
+            }
+        }
+        return history;
+    }
+
+    //Every ~r rolled by this process, and how lucky each player has been
+    public RollLog getRolls() {
+        if (rolls == null) {
+            synchronized (this) {
+                if (rolls == null) {
+                    try {
+                        rolls = RollLog.open(prepare(get("rolls.log", file("rolls.log"))));
+                    } catch (IOException e) {
+                        throw new IllegalStateException("Cannot open the roll log for " + name, e);
+                    }
+                }
+            }
+        }
+        return rolls;
+    }
+
+    public IPlotPointMethods getLocalPlotPoints() {
+        if (plotPoints == null) {
+            synchronized (this) {
+                if (plotPoints == null) {
+                    String mode = get("plotpoints", null);
+                    String path = get("plotpoints.file", file("plotpoints.dat"));
+                    if ("local".equals(mode)) {
+                        try {
+                            prepare(path);
+                        } catch (IOException e) {
+                            throw new IllegalStateException("Cannot create the plot point file " + path, e);
+                        }
+                    }
+                    plotPoints = PlotPointStorage.open(mode, path, this::getPlayers);
+                }
+            }
+        }
+        return plotPoints;
+    }
+
+    boolean isDefault() {
+        return DEFAULT.equals(name);
+    }
+
+    //Returns campaign.<name>.<key>, falling back to the unprefixed key for the default campaign
+    String get(String key, String defaultValue) {
+        Config config = ConfigRegistry.get();
+        String value = config.get("campaign." + name + "." + key);
+        if (value == null && isDefault()) {
+            value = config.get(key);
+        }
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    private int getInt(String key, int defaultValue) {
+        String value = get(key, null);
+        return value != null ? Integer.parseInt(value) : defaultValue;
+    }
+
+    //Creates the folder a storage file goes in
+    private static String prepare(String path) throws IOException {
+        Path parent = Paths.get(path).toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        return path;
+    }
+
+    //Where a storage file goes by default: src/main/resources for the default campaign, a folder of its own otherwise
+    private String file(String fileName) {
+        return isDefault() ? ConfigRegistry.RESOURCES + "/" + fileName
+                : ConfigRegistry.RESOURCES + "/campaigns/" + name + "/" + fileName;
+    }
+}
@@ -0,0 +1,117 @@
+package campaign;
+
+import config.Config;
+import config.ConfigRegistry;
+import transport.Channel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Finds the campaign a command belongs to. A command in one of a campaign's channels (campaign.&lt;name&gt;.channels)
+ * belongs to that campaign, then a command anywhere in a campaign's server (campaign.&lt;name&gt;.guild), and anything
+ * else belongs to the first campaign in the campaigns setting. Without a campaigns setting everything belongs to the
+ * default campaign.
+ * <p>
+ * The routing table is rebuilt whenever the configuration changes, but each campaign is only created once so its state
+ * survives configuration reloads.
+ */
+public class CampaignRegistry {
+
+    private static final ConcurrentHashMap<String, Campaign> campaigns = new ConcurrentHashMap<>();
+    private static volatile Routes routes;
+
+    private CampaignRegistry() {
+    }
+
+    //Returns the campaign a command in this channel belongs to
+    public static Campaign forChannel(Channel channel) {
+        Routes current = getRoutes();
+        String name = current.byChannel.get(channel.getIdAsString());
+        if (name == null && channel.getServerIdAsString() != null) {
+            name = current.byServer.get(channel.getServerIdAsString());
+        }
+        return get(name != null ? name : current.fallback);
+    }
+
+    //Returns the campaign whose session takes place in a voice channel, or null if none does
+    public static Campaign forSessionChannel(String voiceChannelID) {
+        String name = getRoutes().bySession.get(voiceChannelID);
+        return name != null ? get(name) : null;
+    }
+
+    //Returns every configured campaign
+    public static List<Campaign> getAll() {
+        List<Campaign> all = new ArrayList<>();
+        for (String name : getRoutes().names) {
+            all.add(get(name));
+        }
+        return all;
+    }
+
+    //Whether a campaign is in the campaigns setting, or is the default campaign when there isn't one
+    public static boolean isConfigured(String name) {
+        return getRoutes().names.contains(name);
+    }
+
+    public static Campaign get(String name) {
+        return campaigns.computeIfAbsent(name, Campaign::new);
+    }
+
+    private static Routes getRoutes() {
+        Config config = ConfigRegistry.get();
+        Routes current = routes;
+        if (current == null || current.config != config) {
+            current = new Routes(config);
+            routes = current;
+        }
+        return current;
+    }
+
+    //The channel, server and session lookups for one configuration snapshot
+    private static class Routes {
+        private final Config config;
+        private final List<String> names;
+        private final String fallback;
+        private final Map<String, String> byChannel = new HashMap<>();
+        private final Map<String, String> byServer = new HashMap<>();
+        private final Map<String, String> bySession = new HashMap<>();
+
+        Routes(Config config) {
+            this.config = config;
+            List<String> configured = config.getCampaignNames();
+            names = configured.isEmpty() ? Collections.singletonList(Campaign.DEFAULT) : configured;
+            fallback = names.get(0);
+            for (String name : names) {
+                String prefix = "campaign." + name + ".";
+                for (String channel : split(config.get(prefix + "channels"))) {
+                    byChannel.put(channel, name);
+                }
+                for (String server : split(config.get(prefix + "guild"))) {
+                    byServer.put(server, name);
+                }
+                String session = get(name).getSessionChannelID();
+                if (session != null) {
+                    bySession.put(session, name);
+                }
+            }
+        }
+
+        private static Collection<String> split(String value) {
+            List<String> values = new ArrayList<>();
+            if (value != null) {
+                for (String part : value.split(",")) {
+                    if (!part.trim().isEmpty()) {
+                        values.add(part.trim());
+                    }
+                }
+            }
+            return values;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * An immutable snapshot of the bot's configuration files: bot.properties, players.properties, users.yaml, each
+ * campaign's own users and players files and the witty line files. A new snapshot is built by ConfigRegistry
+ * whenever one of the files changes, so a snapshot never changes once it's built.
+ */
+public final class Config {
+
+    private final Map<String, String> bot;
+    private final PlayerDirectory players;
+    private final Map<String, PlayerDirectory> campaignPlayers;
+    private final List<String> rollLines;
+    private final List<String> startupLines;
+
+    Config(Properties botProperties, Properties playerProperties, Map<String, Map<String, Object>> users,
+           List<String> rollLines, List<String> startupLines, Map<String, PlayerDirectory> campaignPlayers) {
+        this.bot = Collections.unmodifiableMap(toMap(botProperties));
+        this.players = new PlayerDirectory(users, playerProperties);
+        this.campaignPlayers = Collections.unmodifiableMap(new HashMap<>(campaignPlayers));
+        this.rollLines = Collections.unmodifiableList(new ArrayList<>(rollLines));
+        this.startupLines = Collections.unmodifiableList(new ArrayList<>(startupLines));
+    }
+
+    //Returns a setting from bot.properties, or the default if it isn't set
+    public String get(String key, String defaultValue) {
+        return bot.getOrDefault(key, defaultValue);
+    }
+
+    public String get(String key) {
+        return bot.get(key);
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = bot.get(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+
+    //Returns every setting in bot.properties
+    public Map<String, String> getBotProperties() {
+        return bot;
+    }
+
+    //Returns the players from users.yaml and players.properties
+    public PlayerDirectory getPlayers() {
+        return players;
+    }
+
+    //Returns the players of a campaign listed in the campaigns setting, or the players in users.yaml for any other
+    public PlayerDirectory getPlayers(String campaign) {
+        return campaignPlayers.getOrDefault(campaign, players);
+    }
+
+    //Returns the names of the campaigns in the campaigns setting, e.g. "campaigns=tuesday,saturday"
+    public List<String> getCampaignNames() {
+        String names = bot.get("campaigns");
+        List<String> campaigns = new ArrayList<>();
+        if (names != null) {
+            for (String name : names.split(",")) {
+                if (!name.trim().isEmpty()) {
+                    campaigns.add(name.trim());
+                }
+            }
+        }
+        return campaigns;
+    }
+
+    //Returns the lines from rollLines.txt
+    public List<String> getRollLines() {
+        return rollLines;
+    }
+
+    //Returns the lines from StartupLines.txt
+    public List<String> getStartupLines() {
+        return startupLines;
+    }
+
+    private static Map<String, String> toMap(Properties properties) {
+        HashMap<String, String> map = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            map.put(key, properties.getProperty(key));
+        }
+        return map;
+    }
+}
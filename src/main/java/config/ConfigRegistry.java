@@ -0,0 +1,223 @@
+package config;
+
+import audit.AuditLog;
+import com.esotericsoftware.yamlbeans.YamlException;
+import com.esotericsoftware.yamlbeans.YamlReader;
+import logic.RollRules;
+
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the current configuration snapshot. The configuration files are parsed once into a Config and re-parsed only
+ * when one of them changes on disk, so reading a setting never touches the file system.
+ */
+public class ConfigRegistry {
+
+    public static final String RESOURCES = "src/main/resources";
+    private static final List<String> FILES = Arrays.asList("bot.properties", "players.properties", "users.yaml",
+            "rollLines.txt", "StartupLines.txt");
+    //Settings the bot can't run without, so a snapshot missing one never replaces a working one
+    private static final List<String> REQUIRED = Collections.singletonList("token");
+    //How long the files have to be left alone after a change before they're reloaded
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private static volatile Config current;
+
+    private ConfigRegistry() {
+    }
+
+    //Returns the current configuration, loading it the first time it's needed
+    public static Config get() {
+        Config config = current;
+        if (config == null) {
+            synchronized (ConfigRegistry.class) {
+                if (current == null) {
+                    current = load();
+                }
+                config = current;
+            }
+        }
+        return config;
+    }
+
+    //Re-reads every configuration file and swaps in the new snapshot
+    public static synchronized void reload() {
+        current = load();
+    }
+
+    //Swaps in a configuration built in memory instead of one read from the files, e.g. by the load generator
+    public static synchronized void set(Properties botProperties, Properties playerProperties,
+                                        Map<String, Map<String, Object>> users) {
+        current = new Config(botProperties, playerProperties, users, Collections.emptyList(),
+                Collections.emptyList(), Collections.emptyMap());
+    }
+
+    //Starts a background thread that reloads the configuration once one of its files has changed and been left alone
+    //for DEBOUNCE_MILLIS
+    public static void watch() {
+        Thread watcher = new Thread(() -> {
+            try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+                Paths.get(RESOURCES).register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY);
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    List<String> watched = watchedFiles(get());
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.context() instanceof Path && watched.contains(event.context().toString())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    if (changed) {
+                        //Editors often save a file in several writes, so wait until they've finished
+                        WatchKey next;
+                        while ((next = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                            next.pollEvents();
+                            next.reset();
+                        }
+                        reload();
+                    }
+                }
+            } catch (IOException e) {
+                AuditLog.error("config", "Stopped watching the configuration files", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    //The files in RESOURCES that are part of the configuration, including each campaign's users and players files
+    private static List<String> watchedFiles(Config config) {
+        List<String> files = new ArrayList<>(FILES);
+        for (String campaign : config.getCampaignNames()) {
+            files.add(usersFile(config.getBotProperties(), campaign));
+            files.add(playersFile(config.getBotProperties(), campaign));
+        }
+        return files;
+    }
+
+    //Parses every file into a new snapshot. If a file can't be parsed or a setting is wrong the last snapshot is kept.
+    private static Config load() {
+        try {
+            Properties bot = loadProperties("bot.properties");
+            Map<String, String> settings = new HashMap<>();
+            for (String key : bot.stringPropertyNames()) {
+                settings.put(key, bot.getProperty(key));
+            }
+            Map<String, PlayerDirectory> campaignPlayers = new HashMap<>();
+            String campaigns = bot.getProperty("campaigns", "");
+            for (String campaign : campaigns.split(",")) {
+                if (!campaign.trim().isEmpty()) {
+                    campaignPlayers.put(campaign.trim(), new PlayerDirectory(
+                            loadUsers(usersFile(settings, campaign.trim())),
+                            loadProperties(playersFile(settings, campaign.trim()))));
+                }
+            }
+            Config config = new Config(bot, loadProperties("players.properties"), loadUsers("users.yaml"),
+                    loadLines("rollLines.txt"), loadLines("StartupLines.txt"), campaignPlayers);
+            validate(config);
+            return config;
+        } catch (IOException | RuntimeException e) {
+            AuditLog.error("config", "Cannot read the configuration, keeping the last one", e);
+            if (current != null) {
+                return current;
+            }
+            return new Config(new Properties(), new Properties(), Collections.emptyMap(), Collections.emptyList(),
+                    Collections.emptyList(), Collections.emptyMap());
+        }
+    }
+
+    //Checks the settings that are only read when a command needs them, so a mistake is reported when it's made
+    private static void validate(Config config) {
+        if (current != null) {
+            for (String key : REQUIRED) {
+                String value = config.get(key);
+                if (value == null || value.trim().isEmpty()) {
+                    throw new IllegalStateException(key + " is missing from bot.properties");
+                }
+            }
+        }
+        validateRules(config, "");
+        for (String campaign : config.getCampaignNames()) {
+            validateRules(config, "campaign." + campaign + ".");
+        }
+    }
+
+    //Throws an IllegalStateException if a rules.* setting isn't a sensible number
+    private static void validateRules(Config config, String prefix) {
+        try {
+            RollRules.of(config.get(prefix + "rules.keep"), config.get(prefix + "rules.explode"),
+                    config.get(prefix + "rules.explode.limit"), config.get(prefix + "rules.plotfloor"));
+        } catch (IllegalStateException e) {
+            //Name the campaign's setting rather than just rules.*
+            throw new IllegalStateException(prefix + e.getMessage(), e);
+        }
+    }
+
+    //A campaign's users.yaml, "users-<campaign>.yaml" unless campaign.<campaign>.users says otherwise
+    private static String usersFile(Map<String, String> settings, String campaign) {
+        return settings.getOrDefault("campaign." + campaign + ".users", "users-" + campaign + ".yaml");
+    }
+
+    //A campaign's players.properties, "players-<campaign>.properties" unless campaign.<campaign>.players says otherwise
+    private static String playersFile(Map<String, String> settings, String campaign) {
+        return settings.getOrDefault("campaign." + campaign + ".players", "players-" + campaign + ".properties");
+    }
+
+    private static Properties loadProperties(String name) throws IOException {
+        Properties prop = new Properties();
+        Path path = Paths.get(RESOURCES, name);
+        if (Files.exists(path)) {
+            try (FileInputStream in = new FileInputStream(path.toFile())) {
+                prop.load(in);
+            }
+        }
+        return prop;
+    }
+
+    private static List<String> loadLines(String name) throws IOException {
+        Path path = Paths.get(RESOURCES, name);
+        return Files.exists(path) ? Files.readAllLines(path) : Collections.emptyList();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> loadUsers(String name) throws IOException {
+        Path path = Paths.get(RESOURCES, name);
+        HashMap<String, Map<String, Object>> users = new HashMap<>();
+        if (!Files.exists(path)) {
+            return users;
+        }
+        try (FileReader reader = new FileReader(path.toFile())) {
+            Map<String, Object> players = (Map<String, Object>) new YamlReader(reader).read();
+            if (players != null) {
+                for (Map.Entry<String, Object> player : players.entrySet()) {
+                    users.put(player.getKey(), Collections.unmodifiableMap((Map<String, Object>) player.getValue()));
+                }
+            }
+        } catch (YamlException e) {
+            throw new IOException(e);
+        }
+        return users;
+    }
+}
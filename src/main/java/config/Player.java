@@ -0,0 +1,38 @@
+package config;
+
+/**
+ * A player from users.yaml and players.properties
+ */
+public final class Player {
+
+    private final String discordID;
+    private final String sheetID;
+    private final String[] columns;
+    private final String characterRange;
+
+    Player(String discordID, String sheetID, String[] columns) {
+        this.discordID = discordID;
+        this.sheetID = sheetID;
+        this.columns = columns;
+        this.characterRange = columns != null ? "Data!" + columns[0] + "1:" + columns[1] + "270" : null;
+    }
+
+    public String getDiscordID() {
+        return discordID;
+    }
+
+    //The ID of the player's own spreadsheet, which holds their plot points. Null if users.yaml doesn't have one.
+    public String getSheetID() {
+        return sheetID;
+    }
+
+    //The first of the two columns holding the player's character on the Data sheet, e.g. "A"
+    public String getFirstColumn() {
+        return columns != null ? columns[0] : null;
+    }
+
+    //The player's character on the Data sheet, e.g. "Data!A1:B270". Null if players.properties doesn't have them.
+    public String getCharacterRange() {
+        return characterRange;
+    }
+}
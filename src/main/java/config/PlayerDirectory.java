@@ -0,0 +1,74 @@
+package config;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * Every player, indexed by Discord ID and by the ID of their spreadsheet. Built once per configuration snapshot and
+ * never changed afterwards, so lookups don't need to lock or copy anything.
+ */
+public final class PlayerDirectory {
+
+    private final Map<String, Player> byDiscordID;
+    private final Map<String, List<Player>> bySheetID;
+    private final List<String> discordIDs;
+
+    PlayerDirectory(Map<String, Map<String, Object>> users, Properties playerColumns) {
+        Set<String> ids = new HashSet<>(users.keySet());
+        ids.addAll(playerColumns.stringPropertyNames());
+
+        HashMap<String, Player> players = new HashMap<>();
+        HashMap<String, List<Player>> sheets = new HashMap<>();
+        for (String id : ids) {
+            Map<String, Object> record = users.get(id);
+            Object sid = record != null ? record.get("sid") : null;
+            String columns = playerColumns.getProperty(id);
+            Player player = new Player(id, sid != null ? String.valueOf(sid) : null,
+                    columns != null ? columns.split(",") : null);
+            players.put(id, player);
+            if (player.getSheetID() != null) {
+                sheets.computeIfAbsent(player.getSheetID(), sheet -> new ArrayList<>()).add(player);
+            }
+        }
+        for (Map.Entry<String, List<Player>> sheet : sheets.entrySet()) {
+            sheet.setValue(Collections.unmodifiableList(sheet.getValue()));
+        }
+        this.byDiscordID = Collections.unmodifiableMap(players);
+        this.bySheetID = Collections.unmodifiableMap(sheets);
+        //users.yaml decides who is playing, players.properties only says where their character is
+        this.discordIDs = Collections.unmodifiableList(new ArrayList<>(users.keySet()));
+    }
+
+    //Returns the player with a Discord ID, or null if they aren't a player
+    public Player get(String discordID) {
+        return discordID != null ? byDiscordID.get(discordID) : null;
+    }
+
+    //Returns the ID of a player's spreadsheet, or null if they aren't a player
+    public String getSheetID(String discordID) {
+        Player player = get(discordID);
+        return player != null ? player.getSheetID() : null;
+    }
+
+    //Returns the players who share a spreadsheet
+    public List<Player> getPlayersBySheet(String sheetID) {
+        List<Player> players = bySheetID.get(sheetID);
+        return players != null ? players : Collections.emptyList();
+    }
+
+    //Returns the Discord ID of every player in users.yaml
+    public List<String> getDiscordIDs() {
+        return discordIDs;
+    }
+
+    public Collection<Player> getPlayers() {
+        return byDiscordID.values();
+    }
+}
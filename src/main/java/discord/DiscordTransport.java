@@ -0,0 +1,197 @@
+package discord;
+
+import audit.AuditLog;
+import org.javacord.api.DiscordApi;
+import org.javacord.api.entity.Icon;
+import org.javacord.api.entity.channel.TextChannel;
+import org.javacord.api.entity.message.Message;
+import org.javacord.api.entity.message.MessageAuthor;
+import org.javacord.api.entity.message.MessageBuilder;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import org.javacord.api.entity.user.User;
+import org.javacord.api.listener.message.reaction.ReactionAddListener;
+import org.javacord.api.util.event.ListenerManager;
+import transport.Author;
+import transport.Channel;
+import transport.CommandListener;
+import transport.Reply;
+import transport.Transport;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * The transport for a logged in Discord bot. Users and session presence come from the PresenceTracker, and users it
+ * hasn't looked up yet are shown as they were remembered from the last run.
+ */
+public class DiscordTransport implements Transport {
+
+    private static final int SEND_TIMEOUT_SECONDS = 5;
+
+    private final DiscordApi api;
+    private final PresenceTracker presence;
+    private final ConcurrentHashMap<String, Author> remembered = new ConcurrentHashMap<>();
+    //Messages Javacord hasn't finished sending yet
+    private final Set<CompletableFuture<?>> sending = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param sessionChannels The voice channels sessions take place in
+     * @param players         The users to look up straight away
+     */
+    public DiscordTransport(DiscordApi api, Collection<String> sessionChannels, Collection<String> players) {
+        this.api = api;
+        this.presence = PresenceTracker.start(api, sessionChannels, players);
+    }
+
+    @Override
+    public void addCommandListener(CommandListener listener) {
+        api.addMessageCreateListener(event -> {
+            if (event.getMessage().getContent().startsWith("~")) {
+                listener.onCommand(event.getMessage().getContent(), new DiscordAuthor(event.getMessage().getAuthor()),
+                        new DiscordChannel(event.getChannel()));
+            }
+        });
+    }
+
+    @Override
+    public Optional<Channel> getChannel(String id) {
+        return api.getTextChannelById(id).map(DiscordChannel::new);
+    }
+
+    @Override
+    public Optional<Author> getUser(String id) {
+        Optional<Author> user = presence.getUser(id).map(DiscordAuthor::new);
+        return user.isPresent() ? user : Optional.ofNullable(remembered.get(id));
+    }
+
+    @Override
+    public void remember(Author user) {
+        remembered.put(user.getIdAsString(), user);
+    }
+
+    @Override
+    public boolean isInVoiceChannel(String channelID, String userID) {
+        return presence.isInVoiceChannel(channelID, userID);
+    }
+
+    //Waits a few seconds, or until the timeout if that's sooner, for replies that are still being sent, then logs out
+    @Override
+    public void disconnect(long timeoutMillis) {
+        try {
+            CompletableFuture.allOf(sending.toArray(new CompletableFuture[0])).get(
+                    Math.min(timeoutMillis, TimeUnit.SECONDS.toMillis(SEND_TIMEOUT_SECONDS)), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            AuditLog.error("discord", "Not every reply was sent before disconnecting", e);
+        }
+        api.disconnect();
+    }
+
+    private void track(CompletableFuture<?> message) {
+        sending.add(message);
+        message.whenComplete((sent, e) -> sending.remove(message));
+    }
+
+    private static class DiscordAuthor implements Author {
+        private final String id;
+        private final String name;
+        private final Icon avatar;
+
+        DiscordAuthor(MessageAuthor author) {
+            this.id = author.getIdAsString();
+            this.name = author.getDisplayName();
+            this.avatar = author.getAvatar();
+        }
+
+        DiscordAuthor(User user) {
+            this.id = user.getIdAsString();
+            this.name = user.getName();
+            this.avatar = user.getAvatar();
+        }
+
+        @Override
+        public String getIdAsString() {
+            return id;
+        }
+
+        @Override
+        public String getDisplayName() {
+            return name;
+        }
+
+        @Override
+        public String getAvatarUrl() {
+            return avatar != null ? avatar.getUrl().toString() : null;
+        }
+    }
+
+    private class DiscordChannel implements Channel {
+        private final TextChannel channel;
+
+        DiscordChannel(TextChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public String getIdAsString() {
+            return channel.getIdAsString();
+        }
+
+        @Override
+        public String getServerIdAsString() {
+            return channel.asServerTextChannel().map(serverChannel -> serverChannel.getServer().getIdAsString())
+                    .orElse(null);
+        }
+
+        @Override
+        public CompletableFuture<Reply> send(EmbedBuilder embed) {
+            CompletableFuture<Message> message = new MessageBuilder()
+                    .setEmbed(embed)
+                    .send(channel);
+            track(message);
+            return message.thenApply(DiscordReply::new);
+        }
+
+        @Override
+        public void send(String content) {
+            track(new MessageBuilder()
+                    .setContent(content)
+                    .send(channel));
+        }
+    }
+
+    private class DiscordReply implements Reply {
+        private final Message message;
+
+        DiscordReply(Message message) {
+            this.message = message;
+        }
+
+        @Override
+        public void edit(EmbedBuilder embed) {
+            track(message.edit(embed));
+        }
+
+        @Override
+        public Runnable onReaction(String emoji, Consumer<String> listener) {
+            message.addReaction(emoji);
+            ListenerManager<ReactionAddListener> manager = message.addReactionAddListener(event -> {
+                if (event.getEmoji().equalsEmoji(emoji) && !event.getUser().isYourself()) {
+                    listener.accept(event.getUser().getIdAsString());
+                }
+            });
+            return () -> {
+                manager.remove();
+                message.removeOwnReactionByEmoji(emoji);
+            };
+        }
+    }
+}
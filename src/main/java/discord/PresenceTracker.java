@@ -0,0 +1,97 @@
+package discord;
+
+import org.javacord.api.DiscordApi;
+import org.javacord.api.entity.user.User;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks who is in each voice channel and keeps the players' Discord users in memory, using voice and member
+ * events instead of asking Discord every time. Nothing here blocks: a user that isn't known yet is looked up in the
+ * background and shows up by ID until the lookup finishes.
+ */
+public class PresenceTracker {
+
+    private static volatile PresenceTracker instance;
+
+    private final DiscordApi api;
+    private final ConcurrentHashMap<String, User> users = new ConcurrentHashMap<>();
+    //Voice channel ID -> the IDs of the users in it
+    private final ConcurrentHashMap<String, Set<String>> voiceMembers = new ConcurrentHashMap<>();
+
+    private PresenceTracker(DiscordApi api) {
+        this.api = api;
+    }
+
+    /**
+     * Seeds the tracker from Javacord's cache and starts listening for voice and member events
+     *
+     * @param sessionChannels The voice channels to read the current members of
+     * @param players         The users to look up straight away
+     */
+    public static PresenceTracker start(DiscordApi api, Collection<String> sessionChannels, Collection<String> players) {
+        PresenceTracker tracker = new PresenceTracker(api);
+        for (String id : players) {
+            tracker.lookUp(id);
+        }
+        for (String channelID : sessionChannels) {
+            api.getServerVoiceChannelById(channelID).ifPresent(channel -> {
+                for (User user : channel.getConnectedUsers()) {
+                    tracker.users.put(user.getIdAsString(), user);
+                    tracker.members(channelID).add(user.getIdAsString());
+                }
+            });
+        }
+        api.addServerVoiceChannelMemberJoinListener(event -> {
+            tracker.users.put(event.getUser().getIdAsString(), event.getUser());
+            tracker.members(event.getChannel().getIdAsString()).add(event.getUser().getIdAsString());
+        });
+        api.addServerVoiceChannelMemberLeaveListener(event ->
+                tracker.members(event.getChannel().getIdAsString()).remove(event.getUser().getIdAsString()));
+        api.addServerMemberJoinListener(event -> tracker.users.put(event.getUser().getIdAsString(), event.getUser()));
+        instance = tracker;
+        return tracker;
+    }
+
+    public static PresenceTracker getInstance() {
+        return instance;
+    }
+
+    //Returns true if the user is in the voice channel
+    public boolean isInVoiceChannel(String channelID, String id) {
+        Set<String> members = voiceMembers.get(channelID);
+        return members != null && members.contains(id);
+    }
+
+    //Returns the user if they're known, starting a background lookup if they aren't
+    public Optional<User> getUser(String id) {
+        User user = users.get(id);
+        if (user != null) {
+            return Optional.of(user);
+        }
+        lookUp(id);
+        return Optional.ofNullable(users.get(id));
+    }
+
+    //Returns the user's name, or their ID if they aren't known yet
+    public String getName(String id) {
+        return getUser(id).map(User::getName).orElse(id);
+    }
+
+    //Checks Javacord's cache first and only asks Discord if the user isn't there
+    private void lookUp(String id) {
+        Optional<User> cached = api.getCachedUserById(id);
+        if (cached.isPresent()) {
+            users.put(id, cached.get());
+            return;
+        }
+        api.getUserById(id).thenAccept(user -> users.put(id, user));
+    }
+
+    private Set<String> members(String channelID) {
+        return voiceMembers.computeIfAbsent(channelID, id -> ConcurrentHashMap.newKeySet());
+    }
+}
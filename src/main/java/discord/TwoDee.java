@@ -1,81 +1,111 @@
 package discord;
 
-import logic.CommandHandler;
+import audit.AuditLog;
+import campaign.Campaign;
+import campaign.CampaignRegistry;
+import config.Config;
+import config.ConfigRegistry;
+import ledger.LedgerServer;
+import logic.CommandDispatcher;
+import logic.StatisticsPrecomputer;
 import org.javacord.api.DiscordApiBuilder;
-import org.javacord.api.entity.message.MessageBuilder;
 import org.javacord.api.util.logging.ExceptionLogger;
+import sheets.SheetSync;
+import startup.Startup;
+import transport.TransportRegistry;
 
-import java.io.BufferedReader;
-import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Properties;
-import java.util.Random;
-
-import static java.lang.System.out;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class TwoDee {
 
     public static void main(String[] args) {
-        try {
-            Properties prop = new Properties();
-            prop.load(new FileInputStream("src/main/resources/bot.properties"));
-            String token = prop.getProperty("token");
-            new DiscordApiBuilder().setToken(token).login().thenAccept(api -> {
+        Startup.begin();
+        ConfigRegistry.watch();
+        Config config = ConfigRegistry.get();
+        startLedger(config.get("ledger.port"));
+        DiscordApiBuilder builder = new DiscordApiBuilder().setToken(config.get("token"));
+        //Each process connects one shard of the gateway. Every process can run any command, since shared state lives
+        //on the ledger.
+        if (config.get("shards.total") != null) {
+            builder.setTotalShards(Integer.parseInt(config.get("shards.total").trim()))
+                    .setCurrentShard(Integer.parseInt(config.get("shards.current", "0").trim()));
+        }
+        builder.login().thenAccept(api -> {
+            List<Campaign> campaigns = CampaignRegistry.getAll();
+            List<String> sessionChannels = new ArrayList<>();
+            Set<String> players = new HashSet<>();
+            for (Campaign campaign : campaigns) {
+                if (campaign.getSessionChannelID() != null) {
+                    sessionChannels.add(campaign.getSessionChannelID());
+                }
+                players.addAll(campaign.getPlayers().getDiscordIDs());
+            }
+            DiscordTransport transport = new DiscordTransport(api, sessionChannels, players);
+            TransportRegistry.set(transport);
+
+            //Restore the last run's caches and load character sheets before anyone rolls
+            Startup.warm(campaigns, transport);
+            StatisticsPrecomputer.start(campaigns);
+            for (Campaign campaign : campaigns) {
                 //Send startup messsage
-                new MessageBuilder()
-                        .setContent(getStartupMessage())
-                        .send(api.getTextChannelById("484544303247523840").get());
-                // Print the invite url of your bot
-                out.println("You can invite the bot by using the following url: " + api.createBotInvite());
+                if (campaign.getStartupChannelID() != null) {
+                    transport.getChannel(campaign.getStartupChannelID())
+                            .ifPresent(channel -> channel.send(getStartupMessage()));
+                }
+                SheetSync.start(campaign.getCharacters());
+            }
+            // Print the invite url of your bot
+            AuditLog.info("discord", "You can invite the bot by using the following url: " + api.createBotInvite());
+
+            //Reload a player's character sheet when they join their campaign's session
+            api.addServerVoiceChannelMemberJoinListener(event -> {
+                Campaign campaign = CampaignRegistry.forSessionChannel(event.getChannel().getIdAsString());
+                if (campaign != null) {
+                    campaign.getCharacters().warm(event.getUser().getIdAsString());
+                }
+            });
+
+            //Listen for commands
+            transport.addCommandListener(new CommandDispatcher());
+        })
+                // Log any exceptions that happened
+                .exceptionally(ExceptionLogger.get());
+
+    }
 
-                //Listen for commands
-                api.addMessageCreateListener(event -> {
-                            if (event.getMessage().getContent().startsWith("~")) {
-                                new CommandHandler(event.getMessage().getContent(), event.getMessage().getAuthor(), event.getChannel(), api);
-                            }
-                        }
-                );
-            })
-                    // Log any exceptions that happened
-                    .exceptionally(ExceptionLogger.get());
+    //Serves this process's doom, plot points and history to the rest of the cluster
+    private static void startLedger(String port) {
+        if (port == null) {
+            return;
+        }
+        try {
+            AuditLog.info("ledger", "Ledger listening on port "
+                    + LedgerServer.start(Integer.parseInt(port.trim())).getPort());
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new IllegalStateException("Cannot start the ledger on port " + port, e);
         }
-
     }
 
     //Returns a random dice roll line
     public static String getRollTitleMessage() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("src/main/resources/rollLines.txt"))) {
-            ArrayList<String> rollLines = new ArrayList<>();
-            String line = reader.readLine();
-            while (line != null) {
-                rollLines.add(line);
-                line = reader.readLine();
-            }
-            return rollLines.get(new Random().nextInt(rollLines.size()));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return "I'm out of witty lines!";
+        return getRandomLine(ConfigRegistry.get().getRollLines());
     }
 
     //Returns a random startup line
     private static String getStartupMessage() {
-        try (BufferedReader reader = new BufferedReader(new FileReader("src/main/resources/StartupLines.txt"))) {
-            ArrayList<String> startupLines = new ArrayList<>();
-            String line = reader.readLine();
-            while (line != null) {
-                startupLines.add(line);
-                line = reader.readLine();
-            }
-            return startupLines.get(new Random().nextInt(startupLines.size()));
-        } catch (IOException e) {
-            e.printStackTrace();
+        return getRandomLine(ConfigRegistry.get().getStartupLines());
+    }
+
+    private static String getRandomLine(List<String> lines) {
+        if (lines.isEmpty()) {
+            return "I'm out of witty lines!";
         }
-        return "I'm out of witty lines!";
+        return lines.get(ThreadLocalRandom.current().nextInt(lines.size()));
     }
 
 
@@ -0,0 +1,40 @@
+package ledger;
+
+import config.ConfigRegistry;
+
+/**
+ * The ledger's wire protocol. A connection starts with the shared secret (ledger.secret). Every request is then an
+ * operation byte, the campaign's name and the operation's arguments, written with DataOutputStream. Every response
+ * starts with a status byte: OK followed by the result, or ERROR followed by a message.
+ */
+final class Ledger {
+
+    static final byte DOOM_GET = 1;
+    static final byte DOOM_ADD = 2;
+    static final byte DOOM_SET = 3;
+    static final byte PP_GET = 4;
+    static final byte PP_SET = 5;
+    static final byte PP_ADD = 6;
+    static final byte RECORD_DOOM = 7;
+    static final byte RECORD_PP = 8;
+    static final byte HISTORY_DOOM = 9;
+    static final byte HISTORY_PP = 10;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    static final int DEFAULT_PORT = 7070;
+    static final String DEFAULT_BIND = "127.0.0.1";
+
+    //The shared secret every node must send before its first request
+    static String getSecret() {
+        String secret = ConfigRegistry.get().get("ledger.secret");
+        if (secret == null || secret.trim().isEmpty()) {
+            throw new IllegalStateException("ledger.secret must be set to use a ledger");
+        }
+        return secret.trim();
+    }
+
+    private Ledger() {
+    }
+}
@@ -0,0 +1,263 @@
+package ledger;
+
+import config.ConfigRegistry;
+import sheets.IPlotPointMethods;
+import storage.DoomStore;
+import storage.HistoryEvent;
+import storage.HistoryStore;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Talks to the LedgerServer named by the ledger setting (host:port), and gives campaigns stores backed by it instead
+ * of local files. Connections are pooled. When a pooled connection the ledger has since closed fails, the request is
+ * sent again on a new one only if it can't have been applied twice: it never left this process, or it only reads.
+ * Every request is a round trip, so a change is on the ledger before the command that made it replies.
+ */
+public class LedgerClient {
+
+    private static final int POOL_SIZE = 8;
+    private static final int TIMEOUT_MILLIS = 5000;
+    private static volatile LedgerClient instance;
+
+    private final String host;
+    private final int port;
+    private final String secret;
+    private final ArrayBlockingQueue<Connection> idle = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public LedgerClient(String host, int port) {
+        this.host = host;
+        this.port = port;
+        secret = Ledger.getSecret();
+    }
+
+    //Returns the client for the configured ledger, or null if campaigns should keep their state locally
+    public static LedgerClient getInstance() {
+        String address = ConfigRegistry.get().get("ledger");
+        if (address == null || address.trim().isEmpty() || LedgerServer.isRunning()) {
+            return null;
+        }
+        if (instance == null) {
+            synchronized (LedgerClient.class) {
+                if (instance == null) {
+                    String[] parts = address.trim().split(":");
+                    int port = parts.length > 1 ? Integer.parseInt(parts[1]) : Ledger.DEFAULT_PORT;
+                    instance = new LedgerClient(parts[0], port);
+                }
+            }
+        }
+        return instance;
+    }
+
+    public DoomStore doom(String campaign) {
+        return new DoomStore() {
+            @Override
+            public int get() {
+                return call(Ledger.DOOM_GET, campaign, out -> {
+                }, DataInputStream::readInt);
+            }
+
+            @Override
+            public int add(int delta) {
+                return call(Ledger.DOOM_ADD, campaign, out -> out.writeInt(delta), DataInputStream::readInt);
+            }
+
+            @Override
+            public int set(int doom) {
+                return call(Ledger.DOOM_SET, campaign, out -> out.writeInt(doom), DataInputStream::readInt);
+            }
+        };
+    }
+
+    public IPlotPointMethods plotPoints(String campaign) {
+        return new IPlotPointMethods() {
+            @Override
+            public int setPlotPoints(String target, int number) {
+                return call(Ledger.PP_SET, campaign, out -> {
+                    out.writeUTF(target);
+                    out.writeInt(number);
+                }, DataInputStream::readInt);
+            }
+
+            @Override
+            public int getPlotPoints(String target) {
+                return call(Ledger.PP_GET, campaign, out -> out.writeUTF(target), DataInputStream::readInt);
+            }
+
+            @Override
+            public int addPlotPoints(String target, int delta) {
+                return call(Ledger.PP_ADD, campaign, out -> {
+                    out.writeUTF(target);
+                    out.writeInt(delta);
+                }, DataInputStream::readInt);
+            }
+        };
+    }
+
+    public HistoryStore history(String campaign) {
+        return new HistoryStore() {
+            @Override
+            public void recordDoom(HistoryEvent.Command command, String actor, int delta, int value) {
+                call(Ledger.RECORD_DOOM, campaign, out -> {
+                    out.writeByte(command.ordinal());
+                    out.writeUTF(actor);
+                    out.writeInt(delta);
+                    out.writeInt(value);
+                }, in -> null);
+            }
+
+            @Override
+            public void recordPlotPoints(HistoryEvent.Command command, String actor, String target, int delta,
+                                         int value) {
+                call(Ledger.RECORD_PP, campaign, out -> {
+                    out.writeByte(command.ordinal());
+                    out.writeUTF(actor);
+                    out.writeUTF(target);
+                    out.writeInt(delta);
+                    out.writeInt(value);
+                }, in -> null);
+            }
+
+            @Override
+            public List<HistoryEvent> getDoomHistory(int limit) {
+                return call(Ledger.HISTORY_DOOM, campaign, out -> out.writeInt(limit), LedgerClient::readEvents);
+            }
+
+            @Override
+            public List<HistoryEvent> getPlotPointHistory(String target, int limit) {
+                return call(Ledger.HISTORY_PP, campaign, out -> {
+                    out.writeUTF(target);
+                    out.writeInt(limit);
+                }, LedgerClient::readEvents);
+            }
+        };
+    }
+
+    //Closes every idle connection
+    public void close() {
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private <T> T call(byte operation, String campaign, Request request, Response<T> response) {
+        Connection connection = idle.poll();
+        boolean pooled = connection != null;
+        try {
+            if (!pooled) {
+                connection = new Connection(host, port, secret);
+            }
+            return send(connection, operation, campaign, request, response);
+        } catch (SocketTimeoutException e) {
+            //The ledger may have applied the request, so it can't be retried. Connecting can time out too.
+            if (connection != null) {
+                connection.close();
+            }
+            throw new IllegalStateException("The ledger at " + host + ":" + port + " timed out", e);
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.close();
+            }
+            //Once a change has been sent the ledger may have applied it before the connection failed
+            if (!pooled || (connection.sent && !isRead(operation))) {
+                throw new IllegalStateException("Lost the connection to the ledger at " + host + ":" + port, e);
+            }
+        }
+        //The pooled connection was closed before the request went out, or the request only reads
+        try {
+            return send(new Connection(host, port, secret), operation, campaign, request, response);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot reach the ledger at " + host + ":" + port, e);
+        }
+    }
+
+    //Whether sending a request twice has the same effect as sending it once
+    private static boolean isRead(byte operation) {
+        return operation == Ledger.DOOM_GET || operation == Ledger.PP_GET || operation == Ledger.HISTORY_DOOM
+                || operation == Ledger.HISTORY_PP;
+    }
+
+    private <T> T send(Connection connection, byte operation, String campaign, Request request, Response<T> response)
+            throws IOException {
+        connection.out.writeByte(operation);
+        connection.out.writeUTF(campaign);
+        request.write(connection.out);
+        connection.out.flush();
+        connection.sent = true;
+        byte status = connection.in.readByte();
+        if (status != Ledger.OK) {
+            String message = connection.in.readUTF();
+            release(connection);
+            throw new IllegalStateException("The ledger refused a request for " + campaign + ": " + message);
+        }
+        T result = response.read(connection.in);
+        release(connection);
+        return result;
+    }
+
+    private void release(Connection connection) {
+        connection.sent = false;
+        if (!idle.offer(connection)) {
+            connection.close();
+        }
+    }
+
+    private static List<HistoryEvent> readEvents(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<HistoryEvent> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long timestamp = in.readLong();
+            HistoryEvent.Type type = HistoryEvent.Type.values()[in.readByte()];
+            HistoryEvent.Command command = HistoryEvent.Command.values()[in.readByte()];
+            events.add(new HistoryEvent(timestamp, type, command, in.readLong(), in.readLong(), in.readInt(),
+                    in.readInt()));
+        }
+        return events;
+    }
+
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Response<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        //Whether the request being sent has been flushed to the socket
+        private boolean sent;
+
+        //Opens a connection. The secret goes out with the first request.
+        Connection(String host, int port, String secret) throws IOException {
+            socket = new Socket();
+            socket.connect(new InetSocketAddress(host, port), TIMEOUT_MILLIS);
+            socket.setSoTimeout(TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            out.writeUTF(secret);
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                //Already closed
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+package ledger;
+
+import audit.AuditLog;
+import campaign.Campaign;
+import campaign.CampaignRegistry;
+import config.ConfigRegistry;
+import storage.HistoryEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the doom pools, plot points and history of this process's campaigns to other processes over TCP, so every
+ * node in a cluster sees the same state. Each connection gets a thread of its own and requests on it are answered in
+ * order. The state itself is the campaigns' local storage, so the changes are as durable as they are without a ledger.
+ * <p>
+ * The ledger listens on ledger.bind (loopback unless set), only accepts connections that open with ledger.secret and
+ * only serves the configured campaigns.
+ * <p>
+ * Started by the bot when ledger.port is set, or on its own with "java ledger.LedgerServer [port]".
+ */
+public class LedgerServer {
+
+    //How long a new connection gets to send the secret, so one that never does can't hold a thread forever
+    private static final int AUTHENTICATE_TIMEOUT_MILLIS = 5000;
+
+    private static volatile LedgerServer running;
+
+    private final ServerSocket serverSocket;
+    private final byte[] secret;
+    //The connections being served, so stopping can close them too
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Set<Thread> connectionThreads = ConcurrentHashMap.newKeySet();
+
+    private LedgerServer(int port) throws IOException {
+        secret = Ledger.getSecret().getBytes(StandardCharsets.UTF_8);
+        String bind = ConfigRegistry.get().get("ledger.bind", Ledger.DEFAULT_BIND).trim();
+        serverSocket = new ServerSocket(port, 0, InetAddress.getByName(bind));
+        Thread acceptor = new Thread(this::accept, "ledger-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        ConfigRegistry.watch();
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : Ledger.DEFAULT_PORT;
+        LedgerServer server = start(port);
+        AuditLog.info("ledger", "Ledger listening on port " + server.getPort());
+        Thread.currentThread().join();
+    }
+
+    //Starts serving on port, or on any free port if it's 0
+    public static synchronized LedgerServer start(int port) throws IOException {
+        if (running == null) {
+            running = new LedgerServer(port);
+        }
+        return running;
+    }
+
+    //Whether this process is the ledger, in which case its campaigns keep their state locally
+    public static boolean isRunning() {
+        return running != null;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections, closes the ones being served and waits for any request they're handling to finish,
+     * so nothing changes this process's state once it returns
+     *
+     * @param deadline A System.nanoTime() to stop waiting for requests at
+     */
+    public void stop(long deadline) throws IOException, InterruptedException {
+        synchronized (LedgerServer.class) {
+            serverSocket.close();
+            if (running == this) {
+                running = null;
+            }
+        }
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        for (Thread thread : connectionThreads) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining > 0) {
+                thread.join(remaining);
+            }
+        }
+    }
+
+    //Stops the ledger this process is serving, if it is serving one
+    public static void shutdown(long deadline) throws IOException, InterruptedException {
+        LedgerServer server = running;
+        if (server != null) {
+            server.stop(deadline);
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread connection = new Thread(() -> {
+                    try {
+                        serve(socket);
+                    } finally {
+                        connections.remove(socket);
+                        connectionThreads.remove(Thread.currentThread());
+                    }
+                }, "ledger-" + socket.getRemoteSocketAddress());
+                connection.setDaemon(true);
+                connectionThreads.add(connection);
+                connection.start();
+                //The server may have stopped while this connection was being set up
+                if (serverSocket.isClosed()) {
+                    socket.close();
+                }
+            } catch (SocketException e) {
+                //The server socket was closed
+                return;
+            } catch (IOException e) {
+                AuditLog.error("ledger", "Cannot accept a ledger connection", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            s.setSoTimeout(AUTHENTICATE_TIMEOUT_MILLIS);
+            if (!MessageDigest.isEqual(secret, in.readUTF().getBytes(StandardCharsets.UTF_8))) {
+                out.writeByte(Ledger.ERROR);
+                out.writeUTF("Wrong ledger.secret");
+                out.flush();
+                AuditLog.info("ledger", "Refused a ledger connection from " + s.getRemoteSocketAddress());
+                return;
+            }
+            //Authenticated nodes keep their connection open between requests
+            s.setSoTimeout(0);
+            while (true) {
+                byte operation;
+                try {
+                    operation = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                String campaign = in.readUTF();
+                try {
+                    handle(operation, campaign, in, out);
+                } catch (RuntimeException e) {
+                    out.writeByte(Ledger.ERROR);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            //The node disconnected
+        }
+    }
+
+    //Reads the rest of the request and writes the response. Arguments are read before anything can fail, and nothing
+    //is written until the request has succeeded, so a failed request never leaves bytes behind in either direction.
+    private void handle(byte operation, String name, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (operation) {
+            case Ledger.DOOM_GET: {
+                int result = campaign(name).getLocalDoomPool().get();
+                ok(out).writeInt(result);
+                break;
+            }
+            case Ledger.DOOM_ADD: {
+                int delta = in.readInt();
+                int result = campaign(name).getLocalDoomPool().add(delta);
+                ok(out).writeInt(result);
+                break;
+            }
+            case Ledger.DOOM_SET: {
+                int doom = in.readInt();
+                int result = campaign(name).getLocalDoomPool().set(doom);
+                ok(out).writeInt(result);
+                break;
+            }
+            case Ledger.PP_GET: {
+                String target = in.readUTF();
+                int result = campaign(name).getLocalPlotPoints().getPlotPoints(target);
+                ok(out).writeInt(result);
+                break;
+            }
+            case Ledger.PP_SET: {
+                String target = in.readUTF();
+                int number = in.readInt();
+                int result = campaign(name).getLocalPlotPoints().setPlotPoints(target, number);
+                ok(out).writeInt(result);
+                break;
+            }
+            case Ledger.PP_ADD: {
+                String target = in.readUTF();
+                int delta = in.readInt();
+                int result = campaign(name).getLocalPlotPoints().addPlotPoints(target, delta);
+                ok(out).writeInt(result);
+                break;
+            }
+            case Ledger.RECORD_DOOM: {
+                int ordinal = in.readUnsignedByte();
+                String actor = in.readUTF();
+                int delta = in.readInt();
+                int value = in.readInt();
+                HistoryEvent.Command command = command(ordinal);
+                campaign(name).getLocalHistory().recordDoom(command, actor, delta, value);
+                ok(out);
+                break;
+            }
+            case Ledger.RECORD_PP: {
+                int ordinal = in.readUnsignedByte();
+                String actor = in.readUTF();
+                String target = in.readUTF();
+                int delta = in.readInt();
+                int value = in.readInt();
+                HistoryEvent.Command command = command(ordinal);
+                campaign(name).getLocalHistory().recordPlotPoints(command, actor, target, delta, value);
+                ok(out);
+                break;
+            }
+            case Ledger.HISTORY_DOOM: {
+                int limit = in.readInt();
+                List<HistoryEvent> events;
+                try {
+                    events = campaign(name).getLocalHistory().getDoomHistory(limit);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot read the history of " + name, e);
+                }
+                writeEvents(out, events);
+                break;
+            }
+            case Ledger.HISTORY_PP: {
+                String target = in.readUTF();
+                int limit = in.readInt();
+                List<HistoryEvent> events;
+                try {
+                    events = campaign(name).getLocalHistory().getPlotPointHistory(target, limit);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Cannot read the history of " + name, e);
+                }
+                writeEvents(out, events);
+                break;
+            }
+            default:
+                //The rest of the request can't be read, so the connection has to go
+                throw new IOException("Unknown ledger operation " + operation);
+        }
+    }
+
+    //Only the configured campaigns are served, so a request can't create campaigns or name files of its own
+    private static Campaign campaign(String name) {
+        if (!CampaignRegistry.isConfigured(name)) {
+            throw new IllegalArgumentException("Unknown campaign " + name);
+        }
+        return CampaignRegistry.get(name);
+    }
+
+    private static HistoryEvent.Command command(int ordinal) {
+        HistoryEvent.Command[] commands = HistoryEvent.Command.values();
+        if (ordinal >= commands.length) {
+            throw new IllegalArgumentException("Unknown history command " + ordinal);
+        }
+        return commands[ordinal];
+    }
+
+    private static DataOutputStream ok(DataOutputStream out) throws IOException {
+        out.writeByte(Ledger.OK);
+        return out;
+    }
+
+    private static void writeEvents(DataOutputStream out, List<HistoryEvent> events) throws IOException {
+        ok(out).writeInt(events.size());
+        for (HistoryEvent event : events) {
+            out.writeLong(event.getTimestamp());
+            out.writeByte(event.getType().ordinal());
+            out.writeByte(event.getCommand().ordinal());
+            out.writeLong(event.getActor());
+            out.writeLong(event.getTarget());
+            out.writeInt(event.getDelta());
+            out.writeInt(event.getValue());
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package logic;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out the statistics of many pools at once without Discord, for preparing tables ahead of a session. Reads one
+ * pool a line in the ~s syntax (e.g. "d6 d8 pd4" or "~s 2d10 pd6") from a file or stdin, and writes each pool's chance
+ * of every total and every amount of doom to stdout in the order the pools were read. Blank lines and lines starting
+ * with # are skipped.
+ * <p>
+ * CSV output has a header and one row per outcome: pool,type,value,chance, where type is total, doom or error and the
+ * chance is a percentage. NDJSON output is one object per pool: {"pool":...,"totals":{...},"doom":{...}}, or
+ * {"pool":...,"error":...} for a pool without statistics.
+ * <p>
+ * Pools are calculated on a pool of worker threads. At most WINDOW_PER_THREAD pools per thread are read ahead of the
+ * output, so a slow consumer slows down reading instead of filling up memory.
+ * <p>
+ * Usage: BatchStatistics [--ndjson] [--threads n] [--keep n] [--explode sizes] [--explode-limit n] [--plot-floor n]
+ * [file]
+ */
+public class BatchStatistics {
+
+    private static final int WINDOW_PER_THREAD = 4;
+    //How often reading checks that the writer is still there while the queue is full
+    private static final long OFFER_MILLIS = 100;
+    private static final String CSV_HEADER = "pool,type,value,chance";
+
+    private final boolean ndjson;
+    private final RollRules rules;
+
+    private BatchStatistics(boolean ndjson, RollRules rules) {
+        this.ndjson = ndjson;
+        this.rules = rules;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        boolean ndjson = false;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String keep = null;
+        String explode = null;
+        String explodeLimit = null;
+        String plotFloor = null;
+        String file = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--ndjson":
+                    ndjson = true;
+                    break;
+                case "--csv":
+                    ndjson = false;
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--keep":
+                    keep = args[++i];
+                    break;
+                case "--explode":
+                    explode = args[++i];
+                    break;
+                case "--explode-limit":
+                    explodeLimit = args[++i];
+                    break;
+                case "--plot-floor":
+                    plotFloor = args[++i];
+                    break;
+                default:
+                    file = args[i];
+            }
+        }
+        BatchStatistics batch = new BatchStatistics(ndjson, RollRules.of(keep, explode, explodeLimit, plotFloor));
+        try (BufferedReader in = file != null ? Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)
+                : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))) {
+            batch.run(in, out, threads);
+        }
+    }
+
+    //Calculates every pool read from in on the given number of threads, writing the results to out in order
+    void run(BufferedReader in, Writer out, int threads) throws IOException, InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "batch-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        //Results in the order their pools were read. Reading waits while the queue is full.
+        BlockingQueue<CompletableFuture<String>> pending = new ArrayBlockingQueue<>(threads * WINDOW_PER_THREAD);
+        CompletableFuture<String> end = CompletableFuture.completedFuture(null);
+        IOException[] writeError = new IOException[1];
+        Thread writer = new Thread(() -> {
+            try {
+                if (!ndjson) {
+                    out.write(CSV_HEADER);
+                    out.write('\n');
+                }
+                CompletableFuture<String> result;
+                while ((result = pending.take()) != end) {
+                    out.write(result.join());
+                }
+                out.flush();
+            } catch (IOException e) {
+                writeError[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "batch-output");
+        writer.start();
+        try {
+            String line;
+            while ((line = in.readLine()) != null && writer.isAlive()) {
+                String pool = line.trim().replaceAll("\\s+", " ");
+                if (pool.isEmpty() || pool.startsWith("#")) {
+                    continue;
+                }
+                if (!enqueue(pending, CompletableFuture.supplyAsync(() -> calculate(pool), workers), writer)) {
+                    break;
+                }
+            }
+        } finally {
+            enqueue(pending, end, writer);
+            writer.join();
+            workers.shutdown();
+        }
+        if (writeError[0] != null) {
+            throw writeError[0];
+        }
+    }
+
+    //Waits for room in the queue for as long as the writer is taking from it. Returns false if the writer has stopped.
+    private static boolean enqueue(BlockingQueue<CompletableFuture<String>> pending, CompletableFuture<String> result,
+                                   Thread writer) throws InterruptedException {
+        while (writer.isAlive()) {
+            if (pending.offer(result, OFFER_MILLIS, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    //The output lines for one pool
+    private String calculate(String pool) {
+        String name = pool.startsWith("~s ") ? pool.substring(3) : pool;
+        StringBuilder result = new StringBuilder();
+        StatisticsGenerator statistics;
+        try {
+            //Every pool is only asked for once, so caching would only fill the cache
+            statistics = new StatisticsGenerator(pool, rules, false, () -> false, StatisticsGenerator.NO_PROGRESS);
+        } catch (RuntimeException e) {
+            return error(result, name, "Cannot read the pool");
+        }
+        Map<Integer, Double> totals = statistics.getTotalProbabilities();
+        Map<Integer, Double> doom = statistics.getDoomProbabilities();
+        if (totals == null) {
+            return error(result, name, statistics.isOverloaded() ? "Too many dice" : "No dice");
+        }
+        if (ndjson) {
+            result.append("{\"pool\":").append(quoteJson(name)).append(",\"totals\":");
+            appendJson(result, totals);
+            result.append(",\"doom\":");
+            appendJson(result, doom);
+            result.append("}\n");
+        } else {
+            appendCsv(result, name, "total", totals);
+            appendCsv(result, name, "doom", doom);
+        }
+        return result.toString();
+    }
+
+    private String error(StringBuilder result, String pool, String message) {
+        if (ndjson) {
+            return result.append("{\"pool\":").append(quoteJson(pool)).append(",\"error\":").append(quoteJson(message))
+                    .append("}\n").toString();
+        }
+        return result.append(quoteCsv(pool)).append(",error,,").append(quoteCsv(message)).append('\n').toString();
+    }
+
+    private static void appendCsv(StringBuilder result, String pool, String type, Map<Integer, Double> percentages) {
+        String quotedPool = quoteCsv(pool);
+        for (int key : ResultFormatter.sortedKeys(percentages)) {
+            result.append(quotedPool).append(',').append(type).append(',').append(key).append(',')
+                    .append(percentages.get(key)).append('\n');
+        }
+    }
+
+    private static void appendJson(StringBuilder result, Map<Integer, Double> percentages) {
+        result.append('{');
+        int[] keys = ResultFormatter.sortedKeys(percentages);
+        for (int i = 0; i < keys.length; i++) {
+            result.append(i > 0 ? "," : "").append('"').append(keys[i]).append("\":").append(percentages.get(keys[i]));
+        }
+        result.append('}');
+    }
+
+    private static String quoteCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String quoteJson(String value) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
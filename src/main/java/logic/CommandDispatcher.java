@@ -0,0 +1,44 @@
+package logic;
+
+import campaign.Campaign;
+import campaign.CampaignRegistry;
+import startup.Shutdown;
+import startup.Startup;
+import transport.Author;
+import transport.Channel;
+import transport.CommandListener;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands each command to the threads of the campaign it belongs to, so a slow command in one campaign never waits
+ * behind another campaign's commands. Commands sent while the bot is starting up are held until it's warm, and commands
+ * sent while it's shutting down are turned away. ~cancel is handled straight away, since the campaign's threads may
+ * all be busy with the calculations it cancels.
+ */
+public class CommandDispatcher implements CommandListener {
+
+    @Override
+    public void onCommand(String content, Author author, Channel channel) {
+        StatisticsPrecomputer.commandReceived();
+        if (content.trim().equals("~cancel")) {
+            int cancelled = StatisticsJob.cancel(author.getIdAsString());
+            channel.send(cancelled > 0 ? "Stopping your statistics" : "You have no statistics running");
+            return;
+        }
+        if (Shutdown.isStopping()) {
+            channel.send("TwoDee is shutting down, try again once it's back");
+            return;
+        }
+        Campaign campaign = CampaignRegistry.forChannel(channel);
+        try {
+            campaign.execute(() -> {
+                Startup.awaitReady();
+                new CommandHandler(content, author, channel, campaign);
+            });
+        } catch (RejectedExecutionException e) {
+            //The campaign started draining after the check above
+            channel.send("TwoDee is shutting down, try again once it's back");
+        }
+    }
+}
@@ -7,7 +7,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Scanner;
 
-//Use if you want to generate commands for AnyDice
+//Use if you want to generate commands for AnyDice. BatchStatistics works out the statistics of many pools directly.
 @Deprecated
 public class CommandGenerator {
 
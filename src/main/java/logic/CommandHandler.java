@@ -1,12 +1,12 @@
 package logic;
 
-import com.google.api.services.sheets.v4.model.ValueRange;
-import org.javacord.api.DiscordApi;
-import org.javacord.api.entity.channel.TextChannel;
-import org.javacord.api.entity.message.MessageAuthor;
-import org.javacord.api.entity.message.MessageBuilder;
+import audit.AuditLog;
+import campaign.Campaign;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
-import sheets.SheetsQuickstart;
+import sheets.CharacterSheet;
+import startup.Shutdown;
+import transport.Author;
+import transport.Channel;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
@@ -14,25 +14,27 @@ import java.util.List;
 
 public class CommandHandler {
 
-    private DiscordApi api;
-    private TextChannel channel;
+    private Channel channel;
     private String message;
-    private MessageAuthor author;
+    private Author author;
+    private Campaign campaign;
 
-    public CommandHandler(String content, MessageAuthor author, TextChannel channel, DiscordApi api) {
+    public CommandHandler(String content, Author author, Channel channel, Campaign campaign) {
         message = content;
         this.author = author;
         this.channel = channel;
-        this.api = api;
+        this.campaign = campaign;
+        AuditLog.command(campaign.getName(), author.getIdAsString(), content);
         commandSelector(content);
-        System.out.println(content);
     }
 
     //Checks to see if any parameters are words to find appropriate replacements in the Google doc
     private String handleCommand() {
         String convertedCommand = getConvertedCommand();
         if (convertedCommand == null) return null;
-        System.out.println(convertedCommand);
+        if (!convertedCommand.equals(message)) {
+            AuditLog.command(campaign.getName(), author.getIdAsString(), convertedCommand);
+        }
         return convertedCommand;
     }
 
@@ -50,25 +52,22 @@ public class CommandHandler {
     //If the skill exists, renames array element and returns true. Otherwise, returns false.
     private boolean skillExists(String[] paramArray, int i) {
         try {
-            SheetsQuickstart characterInfo = new SheetsQuickstart(author.getIdAsString());
-            String change = retrieveDice(paramArray[i].toLowerCase(), characterInfo.getResult());
+            CharacterSheet characterInfo = campaign.getCharacters().get(author.getIdAsString());
+            String change = retrieveDice(paramArray[i].toLowerCase(), characterInfo);
             //If skill is not found, kill function immediately
             if (change == null) {
-                new MessageBuilder()
-                        .setEmbed(new EmbedBuilder()
-                                .setAuthor(author)
-                                .setDescription("Cannot find skill: " + paramArray[i])
-                        )
-                        .send(channel);
+                List<String> suggestions = characterInfo.suggestSkills(paramArray[i]);
+                channel.send(new EmbedBuilder()
+                        .setAuthor(author.getDisplayName(), null, author.getAvatarUrl())
+                        .setDescription("Cannot find skill: " + paramArray[i] + (suggestions.isEmpty() ? ""
+                                : "\nDid you mean " + String.join(", ", suggestions) + "?")));
                 return true;
             }
             paramArray[i] = change;
 
         } catch (IOException | GeneralSecurityException e) {
-            new MessageBuilder()
-                    .setContent("Cannot retrieve spreadsheet!")
-                    .send(channel);
-            e.printStackTrace();
+            channel.send("Cannot retrieve spreadsheet!");
+            AuditLog.error(campaign.getName(), "Cannot retrieve the sheet of " + author.getIdAsString(), e);
         }
         return false;
     }
@@ -80,94 +79,80 @@ public class CommandHandler {
             case "~s":
                 message = handleCommand();
                 assert message != null;
-                StatisticsGenerator statistics = new StatisticsGenerator(message);
-                new MessageBuilder()
-                        .setEmbed(statistics.generateStatistics(author))
-                        .send(channel);
+                new StatisticsJob(message, author, channel, campaign.getRules()).run();
                 break;
 
             //Dice roll listener. Sends extra embeds for plot points and doom
             case "~r":
                 message = handleCommand();
                 assert message != null;
-                DiceRoller diceRoller = new DiceRoller(message);
-                new MessageBuilder()
-                        .setEmbed(diceRoller.generateResults(author))
-                        .send(channel);
-                EmbedBuilder doomEmbed = diceRoller.addPlotPoints(author, api);
+                DiceRoller diceRoller = new DiceRoller(message, campaign.getRules());
+                channel.send(diceRoller.generateResults(author));
+                EmbedBuilder doomEmbed = diceRoller.addPlotPoints(author, campaign);
                 if (doomEmbed != null) {
-                    new MessageBuilder()
-                            .setEmbed(doomEmbed)
-                            .send(channel);
-                    new MessageBuilder()
-                            .setEmbed(diceRoller.addDoom(diceRoller.getDoom()))
-                            .send(channel);
+                    channel.send(doomEmbed);
+                    channel.send(diceRoller.addDoom(author, diceRoller.getDoom(), campaign));
                 }
+                diceRoller.recordRoll(author, campaign);
                 break;
 
             //Version of ~r that doesn't generate doom
             case "~test":
                 message = handleCommand();
                 assert message != null;
-                DiceRoller doomlessRoller = new DiceRoller(message);
-                new MessageBuilder()
-                        .setEmbed(doomlessRoller.generateResults(author))
-                        .send(channel);
+                DiceRoller doomlessRoller = new DiceRoller(message, campaign.getRules());
+                channel.send(doomlessRoller.generateResults(author));
+                break;
+
+            //How lucky a player's rolls have been
+            case "~luck":
+                channel.send(new LuckHandler(message, author, campaign).getLuck());
                 break;
 
             //Doom management
             case "~d":
-                DoomHandler doomHandler = new DoomHandler(message);
-                new MessageBuilder()
-                        .setEmbed(doomHandler.newDoom())
-                        .send(channel);
+            case "~doom":
+                DoomHandler doomHandler = new DoomHandler(message, author, campaign);
+                channel.send(doomHandler.newDoom());
                 break;
 
-            //Kill the bot!
+            //Kill the bot! Queued commands and pending writes are finished first.
             case "~stop":
-                new MessageBuilder()
-                        .setContent("TwoDee shutting down...")
-                        .send(channel);
-                api.disconnect();
-                System.exit(1);
+                channel.send("TwoDee shutting down...");
+                Shutdown.begin();
                 break;
 
             //Add, subtract, and set plot points
             case "~p":
-                PlotPointHandler plotPointHandler = new PlotPointHandler(message, author, api);
-                new MessageBuilder()
-                        .setEmbed(plotPointHandler.processCommandType())
-                        .send(channel);
+                PlotPointHandler plotPointHandler = new PlotPointHandler(message, author, campaign);
+                channel.send(plotPointHandler.processCommandType());
                 break;
 
             default:
                 return new EmbedBuilder()
-                        .setAuthor(author)
+                        .setAuthor(author.getDisplayName(), null, author.getAvatarUrl())
                         .setDescription("Command not recognized");
         }
         return new EmbedBuilder()
-                .setAuthor(author)
+                .setAuthor(author.getDisplayName(), null, author.getAvatarUrl())
                 .setDescription("Command not recognized");
     }
 
     //Convert a skill into a dice value (euphemanu -> d12)
-    private String retrieveDice(String param, ValueRange result) {
-        List<List<Object>> values = result.getValues();
-        for (List<Object> skill : values) {
-            if (skill.size() == 2 && validSkill((String) skill.get(0), param)) {
-                Integer skillVal = Integer.parseInt((String) skill.get(1));
-                return reduceDice(skill, skillVal);
-
-            }
+    static String retrieveDice(String param, CharacterSheet result) {
+        List<Object> skill = result.findSkill(param);
+        if (skill == null) {
+            return null;
         }
-        return null;
+        Integer skillVal = Integer.parseInt(String.valueOf(skill.get(1)));
+        return reduceDice(skill, skillVal);
     }
 
     /*
     If a dice is over d12 reduce dice to facets % 12 d12 dice and the remainder as a dice if the remainder is greater
     than 2. For example (d16 -> d12 d4, d14 -> d12, d100 -> 8d12 d4)
      */
-    private String reduceDice(List<Object> skill, Integer skillVal) {
+    private static String reduceDice(List<Object> skill, Integer skillVal) {
 
         if (skillVal > 12) {
             StringBuilder pool = new StringBuilder();
@@ -181,9 +166,4 @@ public class CommandHandler {
         }
         return "d" + skill.get(1);
     }
-
-    private static boolean validSkill(String skillName, String param) {
-        String skill = skillName.replaceAll("\\s+", "").toLowerCase();
-        return skill.equals(param);
-    }
 }
@@ -1,15 +1,18 @@
 package logic;
 
+import campaign.Campaign;
 import discord.TwoDee;
-import org.javacord.api.DiscordApi;
-import org.javacord.api.entity.message.MessageAuthor;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
+import storage.HistoryEvent;
+import storage.RollRecord;
+import transport.Author;
 
 import java.awt.*;
 import java.util.*;
 
 public class DiceRoller {
 
+    private final RollRules rules;
     private ArrayList<Integer> regDice = new ArrayList<>();
     private ArrayList<Integer> plotDice = new ArrayList<>();
 
@@ -19,8 +22,17 @@ public class DiceRoller {
 
     //The amount of doom generated by this dice roll
     private int doom;
+    //The dice rolled by generateResults
+    private ArrayList<Integer> lastResults = new ArrayList<>();
+    private ArrayList<Integer> lastPlotResults = new ArrayList<>();
+    private int lastTotal;
 
     public DiceRoller(String content) {
+        this(content, RollRules.STANDARD);
+    }
+
+    public DiceRoller(String content, RollRules rules) {
+        this.rules = rules;
         //Split up content
         ArrayList<String> args = new ArrayList<>(Arrays.asList(content.split(" ")));
         args.remove("~r");
@@ -29,22 +41,31 @@ public class DiceRoller {
         diceParameterHandler.addDiceToPools();
     }
 
-    public EmbedBuilder generateResults(MessageAuthor author) {
+    public EmbedBuilder generateResults(Author author) {
         ArrayList<Integer> diceResults = new ArrayList<>();
         ArrayList<Integer> pdResults = new ArrayList<>();
+        ArrayList<Integer> topTwo = new ArrayList<>();
+        ArrayList<Integer> dropped = new ArrayList<>();
         Random random = new Random();
+        int total = roll(random, diceResults, pdResults, topTwo, dropped);
+        lastResults = diceResults;
+        lastPlotResults = pdResults;
+        lastTotal = total;
+        //Build embed
+        return buildResultEmbed(author, diceResults, pdResults, random, topTwo, dropped, total);
+    }
+
+    //Rolls the pool once, filling in the rolled, plot, picked and dropped dice, and returns the total
+    int roll(Random random, ArrayList<Integer> diceResults, ArrayList<Integer> pdResults, ArrayList<Integer> topTwo,
+             ArrayList<Integer> dropped) {
         //Roll the dice
         rollDice(diceResults, pdResults, random);
 
-        //Get top two and dropped dice
-        ArrayList<Integer> topTwo = new ArrayList<>();
-        ArrayList<Integer> dropped = new ArrayList<>();
-        getTopTwo(diceResults, topTwo, dropped);
+        //Get kept and dropped dice
+        getKept(diceResults, topTwo, dropped);
         int plotResult = getPlotResult(pdResults);
         //Sum up total
-        int total = getTotal(topTwo, plotResult);
-        //Build embed
-        return buildResultEmbed(author, diceResults, pdResults, random, topTwo, dropped, total);
+        return getTotal(topTwo, plotResult);
     }
 
     private int getPlotResult(ArrayList<Integer> pdResults) {
@@ -57,54 +78,22 @@ public class DiceRoller {
         return plotResult;
     }
 
-    private EmbedBuilder buildResultEmbed(MessageAuthor author, ArrayList<Integer> diceResults, ArrayList<Integer> pdResults, Random random, ArrayList<Integer> topTwo, ArrayList<Integer> dropped, int total) {
+    private EmbedBuilder buildResultEmbed(Author author, ArrayList<Integer> diceResults, ArrayList<Integer> pdResults, Random random, ArrayList<Integer> topTwo, ArrayList<Integer> dropped, int total) {
         return new EmbedBuilder()
                 .setTitle(TwoDee.getRollTitleMessage())
-                .setAuthor(author)
+                .setAuthor(author.getDisplayName(), null, author.getAvatarUrl())
                 .setColor(new Color(random.nextFloat(), random.nextFloat(), random.nextFloat()))
-                .addField("Regular dice", formatResults(diceResults), true)
-                .addField("Picked", replaceBrackets(topTwo.toString()), true)
-                .addField("Dropped", replaceBrackets(dropped.toString()), true)
-                .addField("Plot dice", replaceBrackets(pdResults.toString()), true)
+                .addField("Regular dice", ResultFormatter.formatDice(diceResults), true)
+                .addField("Picked", ResultFormatter.formatList(topTwo), true)
+                .addField("Dropped", ResultFormatter.formatList(dropped), true)
+                .addField("Plot dice", ResultFormatter.formatList(pdResults), true)
                 .addField("Total", String.valueOf(total), true);
     }
 
-    //Bold 1s to show total doom generated. Runs doom increasing method afterwards.
-    private String formatResults(ArrayList<Integer> s) {
-        String resultString = "";
-        if (s.size() > 1){
-            for (int i = 0; i < s.size() - 1; i++){
-                if (s.get(i) == 1){
-                    resultString += "**1**, ";
-                }
-                else {
-                    resultString += s.get(i) + ", ";
-                }
-            }
-            if (s.get(s.size() - 1) == 1){
-                resultString += "**1**";
-            }
-            else {
-                resultString += s.get(s.size() - 1);
-            }
-        }
-        else if (s.size() == 1){
-            if (s.get(0) == 1){
-                resultString += "**1**";
-            }
-            else {
-                resultString += s.get(0);
-            }
-        }
-        else {
-            return "*none*";
-        }
-        return resultString;
-    }
-
     // Username is stored as <@!140973544891744256>
-    public EmbedBuilder addPlotPoints(MessageAuthor author, DiscordApi api) {
-        PlotPointHandler handler = new PlotPointHandler("~p <@!" + author.getIdAsString() + "> add 1", author, api);
+    public EmbedBuilder addPlotPoints(Author author, Campaign campaign) {
+        PlotPointHandler handler = new PlotPointHandler("~p <@!" + author.getIdAsString() + "> add 1", author,
+                campaign);
         if (doom != 0){
             return handler.processCommandType();
         }
@@ -113,25 +102,57 @@ public class DiceRoller {
         }
     }
 
-    public EmbedBuilder addDoom(int doomVal){
-        DoomWriter doomWriter = new DoomWriter();
-        return doomWriter.addDoom(doomVal);
+    //Adds the roll made by generateResults to the campaign's roll log, along with how it compares with the statistics
+    public void recordRoll(Author author, Campaign campaign) {
+        if (regDice.isEmpty() && plotDice.isEmpty()) {
+            return;
+        }
+        StringBuilder pool = new StringBuilder();
+        regDice.forEach(die -> pool.append("d").append(die).append(" "));
+        plotDice.forEach(die -> pool.append("pd").append(die).append(" "));
+        StatisticsGenerator statistics = new StatisticsGenerator(pool.toString().trim(), rules);
+        int rollDoom = 0;
+        for (int face : lastResults) {
+            if (rules.isDoom(face)) {
+                rollDoom++;
+            }
+        }
+        long player;
+        try {
+            player = Long.parseLong(author.getIdAsString());
+        } catch (NumberFormatException e) {
+            player = 0;
+        }
+        campaign.getRolls().record(new RollRecord(System.currentTimeMillis(), player, toArray(regDice),
+                toArray(lastResults), toArray(plotDice), toArray(lastPlotResults), lastTotal, rollDoom,
+                (float) statistics.getPercentile(lastTotal), (float) statistics.getZScore(lastTotal),
+                (float) statistics.getExpectedDoom()));
+    }
+
+    private static int[] toArray(ArrayList<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    public EmbedBuilder addDoom(Author author, int doomVal, Campaign campaign){
+        DoomWriter doomWriter = new DoomWriter(author.getIdAsString(), campaign);
+        return doomWriter.addDoom(doomVal, HistoryEvent.Command.ROLL);
     }
 
     private int getTotal(ArrayList<Integer> topTwo, int plotResult) {
         return topTwo.stream().mapToInt(Integer::intValue).sum() + plotResult;
     }
 
-    private void getTopTwo(ArrayList<Integer> diceResults, ArrayList<Integer> topTwo, ArrayList<Integer> dropped) {
-        if (diceResults.size() == 1) {
-            topTwo.add(diceResults.get(0));
+    //Picks the highest dice the rules keep
+    private void getKept(ArrayList<Integer> diceResults, ArrayList<Integer> topTwo, ArrayList<Integer> dropped) {
+        if (diceResults.size() <= rules.getKeep()) {
+            topTwo.addAll(diceResults);
         } else {
             //Sort ArrayList in descending order
             ArrayList<Integer> sortedResults = new ArrayList<>(diceResults);
             Collections.sort(sortedResults);
             Collections.reverse(sortedResults);
             for (int i = 0; i < sortedResults.size(); i++) {
-                if (i < 2) {
+                if (i < rules.getKeep()) {
                     topTwo.add(sortedResults.get(i));
                 } else {
                     dropped.add(sortedResults.get(i));
@@ -140,33 +161,19 @@ public class DiceRoller {
         }
     }
 
-    //Roll all of the dice. Plot dice have a minimum value of its maximum roll/2
+    //Roll all of the dice. Plot dice have a minimum value set by the rules, half their size by default.
     private void rollDice(ArrayList<Integer> diceResults, ArrayList<Integer> pdResults, Random random) {
         //Roll dice
         for (Integer normalDice : regDice) {
-            int diceVal = random.nextInt(normalDice) + 1;
+            int diceVal = rules.rollDie(normalDice, random);
             diceResults.add(diceVal);
-            if (diceVal == 1){
+            if (rules.isDoom(diceVal)){
                 doom++;
             }
         }
-        //A plot die's minimum value is its number of faces / 2
         for (Integer pDice : plotDice) {
-            int pValue = random.nextInt(pDice) + 1;
-            if (pValue < pDice / 2){
-                pValue = pDice / 2;
-            }
-            pdResults.add(pValue);
-        }
-    }
-
-    //Replaces brackets in the string. If the string is blank, returns "none" in italics
-    private String replaceBrackets(String s) {
-        String newStr = s.replaceAll("\\[", "").replaceAll("\\]", "");
-        if (newStr.equals("")) {
-            return "*none*";
+            pdResults.add(rules.rollPlotDie(pDice, random));
         }
-        return newStr;
     }
 
 }
@@ -1,20 +1,33 @@
 package logic;
 
+import audit.AuditLog;
+import campaign.Campaign;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
+import storage.HistoryEvent;
+import transport.Author;
+
+import java.io.IOException;
 
 public class DoomHandler {
     private String message;
+    private Author author;
+    private Campaign campaign;
 
-    public DoomHandler(String message) {
+    public DoomHandler(String message, Author author, Campaign campaign) {
         this.message = message;
+        this.author = author;
+        this.campaign = campaign;
     }
 
     //Generates an embed of the new doom value
     public EmbedBuilder newDoom() {
         String[] args = message.split(" ");
-        DoomWriter doomWriter = new DoomWriter();
+        DoomWriter doomWriter = new DoomWriter(author.getIdAsString(), campaign);
         if (args.length == 1) {
-            return new DoomWriter().generateDoomEmbed();
+            return doomWriter.generateDoomEmbed();
+        }
+        if (args[1].equals("history")) {
+            return generateHistory(HistoryFormatter.parseCount(args, 2));
         }
         if (args.length != 3) {
             return new EmbedBuilder()
@@ -25,10 +38,10 @@ public class DoomHandler {
 
             switch (commandType) {
                 case "add":
-                    return doomWriter.addDoom(doomVal);
+                    return doomWriter.addDoom(doomVal, HistoryEvent.Command.ADD);
 
                 case "sub":
-                    return doomWriter.addDoom(doomVal * -1);
+                    return doomWriter.addDoom(doomVal * -1, HistoryEvent.Command.SUB);
 
                 case "set":
                     return doomWriter.setDoom(doomVal);
@@ -39,4 +52,17 @@ public class DoomHandler {
             }
         }
     }
+
+    //Lists the most recent changes to the doom pool (~d history [count])
+    private EmbedBuilder generateHistory(int count) {
+        try {
+            return new EmbedBuilder()
+                    .setTitle("Doom history")
+                    .setDescription(HistoryFormatter.format(campaign.getHistory().getDoomHistory(count)));
+        } catch (IOException e) {
+            AuditLog.error(campaign.getName(), "Cannot read doom history", e);
+            return new EmbedBuilder()
+                    .setTitle("Cannot read doom history!");
+        }
+    }
 }
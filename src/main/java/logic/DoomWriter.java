@@ -1,53 +1,56 @@
 package logic;
 
+import audit.AuditLog;
+import campaign.Campaign;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
+import storage.HistoryEvent;
 
 import java.awt.*;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.Properties;
 
 public class DoomWriter {
 
-    private Properties prop;
+    //The Discord ID of the user whose command is changing doom
+    private String actorID;
+    private Campaign campaign;
 
-    public DoomWriter() {
-        prop = new Properties();
+    public DoomWriter(String actorID, Campaign campaign) {
+        this.actorID = actorID;
+        this.campaign = campaign;
     }
 
-    public EmbedBuilder addDoom(int doomVal) {
-        int currentDoom = getDoom();
-        int newDoomInt = currentDoom + doomVal;
-        setDoom(newDoomInt);
-        return generateDoomEmbed();
+    public EmbedBuilder addDoom(int doomVal, HistoryEvent.Command command) {
+        int newDoom = campaign.getDoomPool().add(doomVal);
+        record(command, doomVal, newDoom);
+        return generateDoomEmbed(newDoom);
     }
 
     public EmbedBuilder generateDoomEmbed() {
-        int doomVal = getDoom();
+        return generateDoomEmbed(getDoom());
+    }
+
+    private EmbedBuilder generateDoomEmbed(int doomVal) {
+        //Color only goes up to 255, so the embed stops getting brighter past that
+        int shade = Math.max(0, Math.min(255, doomVal));
         return new EmbedBuilder()
                 .setTitle("Doom!")
-                .setDescription(String.valueOf(getDoom()))
-                .setColor(new Color(doomVal, doomVal, doomVal));
+                .setDescription(String.valueOf(doomVal))
+                .setColor(new Color(shade, shade, shade));
     }
 
     public int getDoom() {
-        try {
-            prop.load(new FileInputStream("src/main/resources/bot.properties"));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return Integer.parseInt(prop.getProperty("doom"));
+        return campaign.getDoomPool().get();
     }
 
     public EmbedBuilder setDoom(int newDoom) {
-        prop.setProperty("doom", String.valueOf(newDoom));
-        try {
-            prop.store(new FileOutputStream("src/main/resources/bot.properties"), null);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return generateDoomEmbed();
+        int oldDoom = campaign.getDoomPool().set(newDoom);
+        record(HistoryEvent.Command.SET, newDoom - oldDoom, newDoom);
+        return generateDoomEmbed(newDoom);
+    }
+
+    private void record(HistoryEvent.Command command, int delta, int newDoom) {
+        campaign.getHistory().recordDoom(command, actorID, delta, newDoom);
+        AuditLog.mutation(campaign.getName(), actorID, "doom " + command.name().toLowerCase() + " " + delta + " = "
+                + newDoom);
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,57 @@
+package logic;
+
+import storage.HistoryEvent;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * Formats doom and plot point history as lines for an embed
+ */
+class HistoryFormatter {
+
+    static final int DEFAULT_COUNT = 10;
+    //Keeps the description inside Discord's embed limit
+    static final int MAX_COUNT = 25;
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("MMM d HH:mm")
+            .withZone(ZoneId.systemDefault());
+
+    private HistoryFormatter() {
+    }
+
+    //One line per event, e.g. "Oct 19 20:14 @Sam add +2 -> 5"
+    static String format(List<HistoryEvent> events) {
+        if (events.isEmpty()) {
+            return "*none*";
+        }
+        StringBuilder result = new StringBuilder();
+        for (HistoryEvent event : events) {
+            result.append(TIME_FORMAT.format(Instant.ofEpochMilli(event.getTimestamp())))
+                    .append(" <@").append(event.getActor()).append("> ")
+                    .append(event.getCommand().name().toLowerCase()).append(" ")
+                    .append(event.getDelta() >= 0 ? "+" : "").append(event.getDelta())
+                    .append(" -> ").append(event.getValue())
+                    .append("\n");
+        }
+        return result.toString();
+    }
+
+    //Whether an argument is a count rather than a user. Discord IDs are numbers too, but far longer than any count.
+    static boolean isCount(String arg) {
+        return arg.matches("\\d{1,9}");
+    }
+
+    //Reads an optional count argument, falling back to the default for anything that isn't a number
+    static int parseCount(String[] args, int position) {
+        if (args.length <= position) {
+            return DEFAULT_COUNT;
+        }
+        try {
+            return Math.max(1, Math.min(MAX_COUNT, Integer.parseInt(args[position])));
+        } catch (NumberFormatException e) {
+            return DEFAULT_COUNT;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package logic;
+
+import campaign.Campaign;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import storage.Luck;
+import transport.Author;
+import transport.Transport;
+import transport.TransportRegistry;
+
+import java.util.Optional;
+
+/**
+ * Shows how lucky a player's ~r rolls have been compared with the statistics of the pools they rolled
+ */
+public class LuckHandler {
+
+    private Transport transport = TransportRegistry.get();
+    private String message;
+    private Author author;
+    private Campaign campaign;
+
+    public LuckHandler(String message, Author author, Campaign campaign) {
+        this.message = message;
+        this.author = author;
+        this.campaign = campaign;
+    }
+
+    //~luck [@player]
+    public EmbedBuilder getLuck() {
+        String[] args = message.split(" ");
+        String target = args.length > 1 ? args[1].replaceAll("[^A-Za-z0-9]", "") : author.getIdAsString();
+        Optional<Author> user = transport.getUser(target);
+        if (!user.isPresent()) {
+            return new EmbedBuilder()
+                    .setTitle("Cannot find that user!");
+        }
+        EmbedBuilder embed = new EmbedBuilder()
+                .setAuthor(user.get().getDisplayName(), null, user.get().getAvatarUrl())
+                .setTitle("Luck");
+        Luck luck = campaign.getRolls().getLuck(target);
+        if (luck.getRolls() == 0) {
+            return embed.setDescription("No rolls yet");
+        }
+        StringBuilder recent = new StringBuilder();
+        for (float percentile : luck.getRecentPercentiles()) {
+            recent.append(recent.length() > 0 ? ", " : "").append(Math.round(percentile * 100)).append("%");
+        }
+        return embed
+                .addField("Rolls", String.valueOf(luck.getRolls()), true)
+                .addField("Average percentile", Math.round(luck.getAveragePercentile() * 100) + "%", true)
+                .addField("Luck", (luck.getZScore() >= 0 ? "+" : "") + ResultFormatter.formatShort(luck.getZScore())
+                        + " (" + describe(luck.getZScore()) + ")", true)
+                .addField("Doom per roll", ResultFormatter.formatShort((double) luck.getDoom() / luck.getRolls())
+                        + " (" + ResultFormatter.formatShort(luck.getExpectedDoom() / luck.getRolls()) + " expected)",
+                        true)
+                .addField("Latest rolls", recent.toString(), true);
+    }
+
+    //Describes a combined z-score. Beyond 2 either way happens by chance less than 5% of the time.
+    private static String describe(double zScore) {
+        if (zScore >= 2) {
+            return "very lucky";
+        }
+        if (zScore >= 1) {
+            return "a little lucky";
+        }
+        if (zScore > -1) {
+            return "as expected";
+        }
+        if (zScore > -2) {
+            return "a little unlucky";
+        }
+        return "very unlucky";
+    }
+}
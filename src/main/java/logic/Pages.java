@@ -0,0 +1,58 @@
+package logic;
+
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import transport.Channel;
+import transport.Reply;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends results too long for one embed as a single message whose pages are turned with reactions. Turning past the
+ * last page goes back to the first. The reactions stop working PAGE_MINUTES after the pages are sent.
+ */
+class Pages {
+
+    private static final String PREVIOUS = "\u25C0";
+    private static final String NEXT = "\u25B6";
+    private static final long PAGE_MINUTES = 10;
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pages");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Pages() {
+    }
+
+    //Sends the first page, with reactions to turn to the others
+    static void send(Channel channel, List<EmbedBuilder> pages) {
+        if (pages.size() == 1) {
+            channel.send(pages.get(0));
+            return;
+        }
+        channel.send(pages.get(0)).thenAccept(reply -> attach(reply, pages));
+    }
+
+    //Adds reactions to turn the pages of a reply that's showing the first page
+    static void attach(Reply reply, List<EmbedBuilder> pages) {
+        if (pages.size() < 2) {
+            return;
+        }
+        AtomicInteger page = new AtomicInteger();
+        Runnable stopPrevious = reply.onReaction(PREVIOUS, userID -> turn(reply, pages, page, -1));
+        Runnable stopNext = reply.onReaction(NEXT, userID -> turn(reply, pages, page, 1));
+        timer.schedule(() -> {
+            stopPrevious.run();
+            stopNext.run();
+        }, PAGE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    private static void turn(Reply reply, List<EmbedBuilder> pages, AtomicInteger page, int step) {
+        reply.edit(pages.get(page.updateAndGet(current -> Math.floorMod(current + step, pages.size()))));
+    }
+}
@@ -1,11 +1,18 @@
 package logic;
 
-import org.javacord.api.DiscordApi;
-import org.javacord.api.entity.message.MessageAuthor;
+import audit.AuditLog;
+import campaign.Campaign;
+import config.PlayerDirectory;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
-import sheets.PPManager;
+import sheets.IPlotPointMethods;
+import storage.HistoryEvent;
+import storage.HistoryStore;
+import transport.Author;
+import transport.Transport;
+import transport.TransportRegistry;
 
-import java.util.concurrent.ExecutionException;
+import java.io.IOException;
+import java.util.Optional;
 
 /**
  * This class adds plot points, subtracts plot points, and sets plot points for players. This class will also keep
@@ -13,25 +20,49 @@ import java.util.concurrent.ExecutionException;
  */
 public class PlotPointHandler {
 
-    private PPManager ppManager = new PPManager();
-    private UserInfo userInfo = new UserInfo();
+    private Transport transport = TransportRegistry.get();
+    private Campaign campaign;
+    private IPlotPointMethods ppManager;
+    private HistoryStore history;
+    private PlayerDirectory players;
     private String[] args;
-    private MessageAuthor messageAuthor;
-    private DiscordApi api;
+    private Author messageAuthor;
 
-    public PlotPointHandler(String args, MessageAuthor author, DiscordApi api) {
+    public PlotPointHandler(String args, Author author, Campaign campaign) {
         this.args = args.split(" ");
         this.messageAuthor = author;
-        this.api = api;
+        this.campaign = campaign;
+        this.history = campaign.getHistory();
+        this.players = campaign.getPlayers();
     }
 
     //2 args : ~p [add|sub|addall|set] number
     //3 args: ~p name [add|sub|addall|set] number
+    //History: ~p history [name] [count]
 //    @Command(aliases = {"~p", "~plot", "~plotpoints"}, description = "Manages plot points and doom points", usage = "~p <name> <[add|sub|addall|set]> [number]")
     public EmbedBuilder processCommandType() {
+        try {
+            ppManager = campaign.getPlotPoints();
+        } catch (IllegalStateException e) {
+            //The campaign's plot point store can't be opened, so plot points are refused until it can
+            AuditLog.error(campaign.getName(), "Cannot open the plot point store", e);
+            return new EmbedBuilder()
+                    .setAuthor(messageAuthor.getDisplayName(), null, messageAuthor.getAvatarUrl())
+                    .setTitle("Plot points are unavailable!")
+                    .setDescription(e.getMessage());
+        }
         String commandType = "";
         String target = "";
         int amount;
+        //Get a user's plot point history
+        if (args.length > 1 && args[1].equals("history")) {
+            //A number on its own is how many of the player's own changes to list, e.g. ~p history 5
+            if (args.length == 3 && HistoryFormatter.isCount(args[2])) {
+                return getPlotPointHistory(messageAuthor.getIdAsString(), HistoryFormatter.parseCount(args, 2));
+            }
+            String userID = args.length > 2 ? convertPingToID(args[2]) : messageAuthor.getIdAsString();
+            return getPlotPointHistory(userID, HistoryFormatter.parseCount(args, 3));
+        }
         //Get user's plot points
         if (args.length == 2) {
             String userID = convertPingToID(args[1]);
@@ -54,12 +85,24 @@ public class PlotPointHandler {
 
     //Execute a command based on the command type. If an invalid command is entered, send an error embed message
     private EmbedBuilder executeCommand(String commandType, String target, int number) {
+        try {
+            return changePlotPoints(commandType, target, number);
+        } catch (IllegalStateException e) {
+            //The store couldn't save the change, so nothing was recorded
+            return new EmbedBuilder()
+                    .setAuthor(messageAuthor.getDisplayName(), null, messageAuthor.getAvatarUrl())
+                    .setTitle("Cannot change plot points!")
+                    .setDescription(e.getMessage());
+        }
+    }
+
+    private EmbedBuilder changePlotPoints(String commandType, String target, int number) {
         switch (commandType) {
             case "add":
-                return addPlotPoints(target, number);
+                return addPlotPoints(target, number, HistoryEvent.Command.ADD);
 
             case "sub":
-                return addPlotPoints(target, number * -1);
+                return addPlotPoints(target, number * -1, HistoryEvent.Command.SUB);
 
             case "addall":
                 return addPlotPointsToAll(number);
@@ -69,7 +112,7 @@ public class PlotPointHandler {
 
             default:
                 return new EmbedBuilder()
-                        .setAuthor(messageAuthor)
+                        .setAuthor(messageAuthor.getDisplayName(), null, messageAuthor.getAvatarUrl())
                         .setTitle("Invalid command");
         }
     }
@@ -80,53 +123,97 @@ public class PlotPointHandler {
     }
 
     private EmbedBuilder setPlotPoints(String target, int number) {
+        int oldPoints = ppManager.getPlotPoints(target);
         ppManager.setPlotPoints(target, number);
-        return getPlotPoints(target);
+        record(HistoryEvent.Command.SET, target, number - oldPoints, number);
+        return changedPlotPoints(target, number);
     }
 
     private EmbedBuilder addPlotPointsToAll(int number) {
-        for (String ID : userInfo.getUsers()) {
-            try {
-                if (isConnected(ID)){
-                    ppManager.setPlotPoints(ID, ppManager.getPlotPoints(ID) + number);
-                }
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
+        for (String ID : players.getDiscordIDs()) {
+            if (isConnected(ID)){
+                int newPoints = ppManager.addPlotPoints(ID, number);
+                record(HistoryEvent.Command.ADDALL, ID, number, newPoints);
             }
         }
         EmbedBuilder allPlayerEmbed = new EmbedBuilder()
                 .setTitle("Everyone's plot points!");
-        for (String id : userInfo.getUsers()) {
-            try {
-                allPlayerEmbed.addField(api.getUserById(id).get().getName(), String.valueOf(ppManager.getPlotPoints(id)), true);
-            } catch (InterruptedException | ExecutionException e) {
-                e.printStackTrace();
-            }
+        for (String id : players.getDiscordIDs()) {
+            allPlayerEmbed.addField(transport.getName(id), String.valueOf(ppManager.getPlotPoints(id)), true);
         }
-        return getPlotPoints(null);
+        return allPlayerEmbed;
     }
 
-    private boolean isConnected(String ID) throws InterruptedException, ExecutionException {
-        return api.getServerVoiceChannelById("468046159781429254").get().isConnected(api.getUserById(ID).get());
+    private boolean isConnected(String ID) {
+        String session = campaign.getSessionChannelID();
+        return session != null && transport.isInVoiceChannel(session, ID);
     }
 
-    private EmbedBuilder addPlotPoints(String target, int number) {
-        ppManager.setPlotPoints(target, ppManager.getPlotPoints(target) + number);
-        return getPlotPoints(target);
+    private EmbedBuilder addPlotPoints(String target, int number, HistoryEvent.Command command) {
+        int newPoints = ppManager.addPlotPoints(target, number);
+        record(command, target, number, newPoints);
+        return changedPlotPoints(target, newPoints);
     }
 
-    private EmbedBuilder getPlotPoints(String target) {
+    private void record(HistoryEvent.Command command, String target, int delta, int newPoints) {
+        history.recordPlotPoints(command, messageAuthor.getIdAsString(), target, delta, newPoints);
+        AuditLog.mutation(campaign.getName(), messageAuthor.getIdAsString(), "plot points of " + target + " "
+                + command.name().toLowerCase() + " " + delta + " = " + newPoints);
+    }
+
+    //Lists the most recent changes to a player's plot points
+    private EmbedBuilder getPlotPointHistory(String target, int count) {
+        Optional<EmbedBuilder> player = player(target);
+        if (!player.isPresent()) {
+            return userNotFound();
+        }
         try {
-            return new EmbedBuilder()
-                    .setAuthor(api.getUserById(target).get())
-                    .setTitle("Plot points")
-                    .setDescription(String.valueOf(ppManager.getPlotPoints(target)));
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
-            return new EmbedBuilder()
-                    .setAuthor(messageAuthor)
-                    .setTitle("User not found!");
+            return player.get()
+                    .setTitle("Plot point history")
+                    .setDescription(HistoryFormatter.format(history.getPlotPointHistory(target, count)));
+        } catch (IOException e) {
+            AuditLog.error(campaign.getName(), "Cannot read plot point history", e);
+            return player.get()
+                    .setTitle("Cannot read plot point history!");
+        }
+    }
+
+    private EmbedBuilder getPlotPoints(String target) {
+        Optional<EmbedBuilder> player = player(target);
+        if (!player.isPresent()) {
+            return userNotFound();
         }
+        return player.get()
+                .setTitle("Plot points")
+                .setDescription(String.valueOf(ppManager.getPlotPoints(target)));
+    }
+
+    //Shows a player's plot points after a change. The change has been made, so a player who isn't known yet is shown
+    //by their ID rather than as not found.
+    private EmbedBuilder changedPlotPoints(String target, int points) {
+        Optional<Author> user = transport.getUser(target);
+        return new EmbedBuilder()
+                .setAuthor(transport.getName(target), null, user.map(Author::getAvatarUrl).orElse(null))
+                .setTitle("Plot points")
+                .setDescription(String.valueOf(points));
+    }
+
+    //Starts an embed about a player. The transport may not have cached them yet, e.g. just after a restart, so they're
+    //looked up by name too, and the campaign's players are shown by their ID if that finds nothing either.
+    private Optional<EmbedBuilder> player(String target) {
+        Optional<Author> user = transport.getUser(target);
+        String name = transport.getName(target);
+        if (!user.isPresent() && name.equals(target) && players.get(target) == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new EmbedBuilder()
+                .setAuthor(name, null, user.map(Author::getAvatarUrl).orElse(null)));
+    }
+
+    private EmbedBuilder userNotFound() {
+        return new EmbedBuilder()
+                .setAuthor(messageAuthor.getDisplayName(), null, messageAuthor.getAvatarUrl())
+                .setTitle("User not found!");
     }
 
 }
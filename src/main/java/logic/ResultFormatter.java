@@ -0,0 +1,145 @@
+package logic;
+
+import java.text.DecimalFormat;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns dice and odds into the text of embed fields. Each thread reuses one StringBuilder and one set of formatters,
+ * and output is kept inside Discord's limit of MAX_FIELD_LENGTH characters a field.
+ * <p>
+ * A handful of dice are listed one by one with 1s in bold, e.g. "6, **1**, 4". Bigger pools are summarized as how many
+ * of each face came up, highest first, e.g. "8x6, 3x4, 12x**1**" with a multiplication sign for the x.
+ */
+class ResultFormatter {
+
+    static final int MAX_FIELD_LENGTH = 1024;
+    //Pools with more dice than this are summarized as face counts
+    static final int LIST_DICE = 12;
+    static final String NONE = "*none*";
+    private static final char TIMES = '\u00d7';
+
+    private static final ThreadLocal<StringBuilder> builders = ThreadLocal.withInitial(() -> new StringBuilder(256));
+    private static final ThreadLocal<DecimalFormat> percentFormats = ThreadLocal.withInitial(
+            () -> new DecimalFormat("0.#####"));
+    private static final ThreadLocal<DecimalFormat> shortFormats = ThreadLocal.withInitial(
+            () -> new DecimalFormat("0.##"));
+
+    private ResultFormatter() {
+    }
+
+    //Rolled dice with 1s in bold, since they're doom
+    static String formatDice(List<Integer> faces) {
+        return format(faces, true);
+    }
+
+    //Picked, dropped or plot dice
+    static String formatList(List<Integer> faces) {
+        return format(faces, false);
+    }
+
+    private static String format(List<Integer> faces, boolean boldOnes) {
+        if (faces.isEmpty()) {
+            return NONE;
+        }
+        StringBuilder result = builder();
+        if (faces.size() <= LIST_DICE) {
+            for (int i = 0; i < faces.size(); i++) {
+                appendFace(result.append(i > 0 ? ", " : ""), faces.get(i), boldOnes);
+            }
+            return result.toString();
+        }
+        int[] sorted = new int[faces.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = faces.get(i);
+        }
+        Arrays.sort(sorted);
+        for (int i = sorted.length - 1; i >= 0; ) {
+            int face = sorted[i];
+            int count = 0;
+            while (i >= 0 && sorted[i] == face) {
+                count++;
+                i--;
+            }
+            appendFace(result.append(result.length() > 0 ? ", " : "").append(count).append(TIMES), face, boldOnes);
+        }
+        return truncate(result);
+    }
+
+    private static void appendFace(StringBuilder result, int face, boolean boldOnes) {
+        if (boldOnes && face == 1) {
+            result.append("**1**");
+        } else {
+            result.append(face);
+        }
+    }
+
+    //One line per outcome in order, e.g. "7: 12.5%"
+    static String formatPercentages(Map<Integer, Double> percentages) {
+        return formatPercentages(percentages, sortedKeys(percentages), 0, percentages.size());
+    }
+
+    //The lines for the outcomes from keys[from] up to keys[to - 1]
+    static String formatPercentages(Map<Integer, Double> percentages, int[] keys, int from, int to) {
+        StringBuilder result = builder();
+        DecimalFormat df = percentFormats.get();
+        for (int i = from; i < to; i++) {
+            result.append(keys[i]).append(": ").append(df.format(percentages.get(keys[i]))).append("%\n");
+        }
+        return truncate(result);
+    }
+
+    /**
+     * Splits a distribution into pages whose lines fit in a field
+     *
+     * @return The index in keys that each page starts at, followed by keys.length
+     */
+    static int[] paginate(Map<Integer, Double> percentages, int[] keys) {
+        int[] starts = new int[keys.length + 1];
+        int pages = 0;
+        int length = 0;
+        DecimalFormat df = percentFormats.get();
+        for (int i = 0; i < keys.length; i++) {
+            //"key: percentage%\n"
+            int line = String.valueOf(keys[i]).length() + df.format(percentages.get(keys[i])).length() + 4;
+            if (i == 0 || length + line > MAX_FIELD_LENGTH) {
+                starts[pages++] = i;
+                length = 0;
+            }
+            length += line;
+        }
+        starts[pages] = keys.length;
+        return Arrays.copyOf(starts, pages + 1);
+    }
+
+    static int[] sortedKeys(Map<Integer, Double> percentages) {
+        int[] keys = new int[percentages.size()];
+        int i = 0;
+        for (int key : percentages.keySet()) {
+            keys[i++] = key;
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    //A number to two decimal places, e.g. for the chance to meet a difficulty
+    static String formatShort(double number) {
+        return shortFormats.get().format(number);
+    }
+
+    private static StringBuilder builder() {
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+        return builder;
+    }
+
+    //Cuts text that would go over the field limit, ending it with an ellipsis
+    private static String truncate(StringBuilder result) {
+        if (result.length() > MAX_FIELD_LENGTH) {
+            result.setLength(MAX_FIELD_LENGTH - 3);
+            result.append("...");
+        }
+        return result.toString();
+    }
+}
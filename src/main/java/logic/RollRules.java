@@ -0,0 +1,182 @@
+package logic;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * The rules a campaign rolls dice by. The standard rules keep the two highest regular dice, add every plot die, count
+ * each regular 1 as doom and never let a plot die come up under half its size. A campaign can change them in
+ * bot.properties:
+ * <ul>
+ * <li>rules.keep - how many of the highest regular dice are kept (2)</li>
+ * <li>rules.explode - the sizes of regular dice that explode, e.g. "12" or "10,12" (none). An exploding die that
+ * rolls its highest face is rolled again and added.</li>
+ * <li>rules.explode.limit - how many times one die can explode (3), which keeps the exact odds finite</li>
+ * <li>rules.plotfloor - the lowest a plot die can come up, as a percentage of its size (50)</li>
+ * </ul>
+ * Rules are parsed once and shared. Each one works out the outcomes of every die size it's asked about once, so the
+ * roller, the exact statistics and the estimates all read the same tables whatever the rules are.
+ */
+public final class RollRules {
+
+    private static final int DEFAULT_KEEP = 2;
+    private static final int DEFAULT_EXPLODE_LIMIT = 3;
+    private static final int DEFAULT_PLOT_FLOOR = 50;
+    //The highest a regular die may total, so the kept dice of a pool can be packed into a long while counting
+    static final int MAX_VALUE = 511;
+
+    public static final RollRules STANDARD = new RollRules(DEFAULT_KEEP, new TreeSet<>(), DEFAULT_EXPLODE_LIMIT,
+            DEFAULT_PLOT_FLOOR);
+
+    //Definition -> parsed rules
+    private static final ConcurrentHashMap<String, RollRules> parsed = new ConcurrentHashMap<>();
+
+    private final int keep;
+    private final TreeSet<Integer> explode;
+    private final int explodeLimit;
+    private final int plotFloor;
+    private final String key;
+    //Die size -> chance of each value, indexed by value
+    private final ConcurrentHashMap<Integer, double[]> dieOutcomes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, double[]> plotDieOutcomes = new ConcurrentHashMap<>();
+
+    private RollRules(int keep, TreeSet<Integer> explode, int explodeLimit, int plotFloor) {
+        this.keep = keep;
+        this.explode = explode;
+        this.explodeLimit = explodeLimit;
+        this.plotFloor = plotFloor;
+        this.key = keep == DEFAULT_KEEP && explode.isEmpty() && plotFloor == DEFAULT_PLOT_FLOOR ? ""
+                : "keep " + keep + " explode " + explode.stream().map(String::valueOf).collect(Collectors.joining(","))
+                + " limit " + explodeLimit + " floor " + plotFloor + ":";
+    }
+
+    /**
+     * Returns the rules for the rules.* settings of a campaign. Settings that are null keep their standard values.
+     *
+     * @throws IllegalStateException if a setting isn't a sensible number
+     */
+    public static RollRules of(String keep, String explode, String explodeLimit, String plotFloor) {
+        String definition = keep + "/" + explode + "/" + explodeLimit + "/" + plotFloor;
+        RollRules rules = parsed.get(definition);
+        if (rules == null) {
+            rules = parse(keep, explode, explodeLimit, plotFloor);
+            parsed.putIfAbsent(definition, rules);
+        }
+        return rules;
+    }
+
+    private static RollRules parse(String keep, String explode, String explodeLimit, String plotFloor) {
+        TreeSet<Integer> explodingDice = new TreeSet<>();
+        if (explode != null) {
+            for (String size : explode.split(",")) {
+                if (!size.trim().isEmpty()) {
+                    explodingDice.add(parseSetting("rules.explode", size, 2));
+                }
+            }
+        }
+        RollRules rules = new RollRules(
+                keep != null ? parseSetting("rules.keep", keep, 1) : DEFAULT_KEEP,
+                explodingDice,
+                explodeLimit != null ? parseSetting("rules.explode.limit", explodeLimit, 0) : DEFAULT_EXPLODE_LIMIT,
+                plotFloor != null ? parseSetting("rules.plotfloor", plotFloor, 0) : DEFAULT_PLOT_FLOOR);
+        return rules.key.isEmpty() ? STANDARD : rules;
+    }
+
+    private static int parseSetting(String name, String value, int minimum) {
+        try {
+            int parsedValue = Integer.parseInt(value.trim());
+            if (parsedValue >= minimum) {
+                return parsedValue;
+            }
+        } catch (NumberFormatException e) {
+            //Reported below
+        }
+        throw new IllegalStateException(name + " must be a whole number of at least " + minimum + ", not " + value);
+    }
+
+    //How many of the highest regular dice count towards the total
+    public int getKeep() {
+        return keep;
+    }
+
+    //Prefixed to the cache key of a pool, so pools rolled by different rules don't share statistics. Empty for STANDARD.
+    public String getKey() {
+        return key;
+    }
+
+    //Rolls a regular die, exploding it if the rules say so
+    public int rollDie(int size, Random random) {
+        int face = random.nextInt(size) + 1;
+        if (face != size || !explode.contains(size)) {
+            return face;
+        }
+        int total = face;
+        for (int explosions = 0; explosions < explodeLimit && face == size; explosions++) {
+            face = random.nextInt(size) + 1;
+            total += face;
+        }
+        return total;
+    }
+
+    public int rollPlotDie(int size, Random random) {
+        return Math.max(random.nextInt(size) + 1, getPlotFloor(size));
+    }
+
+    //A regular die generates doom when it comes up 1
+    public boolean isDoom(int value) {
+        return value == 1;
+    }
+
+    //The lowest a plot die can come up
+    public int getPlotFloor(int size) {
+        return size * plotFloor / 100;
+    }
+
+    //The highest a regular die can total
+    public int getMaxValue(int size) {
+        return explode.contains(size) ? size * (explodeLimit + 1) : size;
+    }
+
+    //The chance of a regular die totalling each value, indexed by value
+    double[] getDieOutcomes(int size) {
+        return dieOutcomes.computeIfAbsent(size, this::dieOutcomes);
+    }
+
+    //The chance of a plot die coming up each value, indexed by value
+    double[] getPlotDieOutcomes(int size) {
+        return plotDieOutcomes.computeIfAbsent(size, this::plotDieOutcomes);
+    }
+
+    /*
+    An exploding die that has exploded k times so far shows k times its size plus its last face. Every face but the
+    highest stops it there; the highest face only stops it once it has used up its explosions.
+     */
+    private double[] dieOutcomes(int size) {
+        double[] chances = new double[getMaxValue(size) + 1];
+        if (!explode.contains(size)) {
+            Arrays.fill(chances, 1, size + 1, 1.0 / size);
+            return chances;
+        }
+        double chance = 1.0 / size;
+        for (int explosions = 0; explosions <= explodeLimit; explosions++) {
+            for (int face = 1; face < size; face++) {
+                chances[explosions * size + face] = chance;
+            }
+            chance /= size;
+        }
+        chances[size * (explodeLimit + 1)] = chance * size;
+        return chances;
+    }
+
+    private double[] plotDieOutcomes(int size) {
+        int floor = getPlotFloor(size);
+        double[] chances = new double[Math.max(size, floor) + 1];
+        for (int face = 1; face <= size; face++) {
+            chances[Math.max(face, floor)] += 1.0 / size;
+        }
+        return chances;
+    }
+}
@@ -0,0 +1,119 @@
+package logic;
+
+import sheets.SingleFlight;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the distributions of recently requested dice pools, so asking for the statistics of a pool again doesn't
+ * count every combination again. Pools are keyed by their sorted dice, so "d8 d6" and "d6 d8" share an entry.
+ * The least recently used pools are dropped once MAX_POOLS are cached. Players asking for the same pool at the same time
+ * share one calculation.
+ */
+public class StatisticsCache {
+
+    static final int MAX_POOLS = 1024;
+    private static final Map<String, Distribution> distributions = new LinkedHashMap<String, Distribution>(16, 0.75f,
+            true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Distribution> eldest) {
+            return size() > MAX_POOLS;
+        }
+    };
+    private static final SingleFlight<String, Distribution> calculating = new SingleFlight<>();
+
+    private StatisticsCache() {
+    }
+
+    //The cache key of a pool, e.g. "6,8|6" for d6 d8 pd6
+    public static String key(List<Integer> dice, List<Integer> plotDice) {
+        List<Integer> sortedDice = new ArrayList<>(dice);
+        List<Integer> sortedPlotDice = new ArrayList<>(plotDice);
+        Collections.sort(sortedDice);
+        Collections.sort(sortedPlotDice);
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < sortedDice.size(); i++) {
+            key.append(i > 0 ? "," : "").append(sortedDice.get(i));
+        }
+        key.append('|');
+        for (int i = 0; i < sortedPlotDice.size(); i++) {
+            key.append(i > 0 ? "," : "").append(sortedPlotDice.get(i));
+        }
+        return key.toString();
+    }
+
+    //The cache key of a pool rolled by a campaign's rules. Pools rolled by the standard rules keep their plain key.
+    public static String key(RollRules rules, List<Integer> dice, List<Integer> plotDice) {
+        return rules.getKey() + key(dice, plotDice);
+    }
+
+    //Returns the cached distribution of a pool, or null if it hasn't been calculated
+    public static synchronized Distribution get(String key) {
+        return distributions.get(key);
+    }
+
+    /**
+     * Returns the cached distribution of a pool, calculating it if it isn't cached and nobody else is calculating it
+     *
+     * @param stopped Checked while waiting for someone else's calculation. Once it returns true the wait gives up by
+     *                throwing a CancellationException.
+     */
+    public static Distribution get(String key, Supplier<Distribution> calculate, BooleanSupplier stopped) {
+        Distribution cached = get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return calculating.run(key, () -> {
+            //Someone may have finished calculating it between the lookup and now
+            Distribution distribution = get(key);
+            if (distribution == null) {
+                distribution = calculate.get();
+                put(key, distribution);
+            }
+            return distribution;
+        }, stopped);
+    }
+
+    //Whether a pool is cached, without counting as a use of it
+    public static synchronized boolean contains(String key) {
+        return distributions.containsKey(key);
+    }
+
+    public static synchronized void put(String key, Distribution distribution) {
+        distributions.put(key, distribution);
+    }
+
+    //A copy of every cached pool, least recently used first
+    public static synchronized Map<String, Distribution> getAll() {
+        return new LinkedHashMap<>(distributions);
+    }
+
+    /**
+     * The chance of rolling each total and of generating each amount of doom, as percentages. Never changed once
+     * created, so it can be shared between commands.
+     */
+    public static class Distribution {
+        private final HashMap<Integer, Double> totals;
+        private final HashMap<Integer, Double> doom;
+
+        public Distribution(HashMap<Integer, Double> totals, HashMap<Integer, Double> doom) {
+            this.totals = totals;
+            this.doom = doom;
+        }
+
+        public HashMap<Integer, Double> getTotals() {
+            return totals;
+        }
+
+        public HashMap<Integer, Double> getDoom() {
+            return doom;
+        }
+    }
+}
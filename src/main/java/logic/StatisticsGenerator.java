@@ -1,16 +1,37 @@
 package logic;
 
 import discord.TwoDee;
-import org.javacord.api.entity.message.MessageAuthor;
 import org.javacord.api.entity.message.embed.EmbedBuilder;
+import transport.Author;
 
 import java.awt.*;
-import java.text.DecimalFormat;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.BooleanSupplier;
 
 public class StatisticsGenerator {
 
-    private ArrayList<DiceResult> resultList = new ArrayList<>();
+    //Told each time another part of the combinations has been counted
+    interface Progress {
+        void counted(int parts, int of);
+    }
+
+    static final Progress NO_PROGRESS = (parts, of) -> {
+    };
+    //How many outcomes are counted between checks for cancellation
+    private static final int CHECK_EVERY = 1 << 16;
+    //Each kept die takes 9 bits of a state, and the doom so far goes above the 6 dice a pool can have
+    private static final int VALUE_BITS = 9;
+    private static final int DOOM_SHIFT = 54;
+    private static final long VALUE_MASK = (1 << VALUE_BITS) - 1;
+    //When most dice are kept, a state is their sum with the dice that would be dropped above SUM_BITS
+    private static final int SUM_BITS = 18;
+
+    private final RollRules rules;
+    private BooleanSupplier stopped;
+    private Progress progress;
+    private long counted;
     private HashMap<Integer, Double> statisticsMap;
     private HashMap<Integer, Double> doomMap;
     private boolean validCombo = false;
@@ -19,6 +40,31 @@ public class StatisticsGenerator {
     private ArrayList<Integer> plotDice;
 
     public StatisticsGenerator(String message) {
+        this(message, RollRules.STANDARD);
+    }
+
+    public StatisticsGenerator(String message, RollRules rules) {
+        this(message, rules, true, () -> false, NO_PROGRESS);
+    }
+
+    //Calculates the statistics of a pool, reusing a cached distribution when cached is true
+    StatisticsGenerator(String message, boolean cached) {
+        this(message, RollRules.STANDARD, cached, () -> false, NO_PROGRESS);
+    }
+
+    /**
+     * Calculates the statistics of a pool
+     *
+     * @param rules    The rules the pool is rolled by
+     * @param cached   Whether to reuse a cached distribution, or share a calculation of the same pool in progress
+     * @param stopped  Checked while calculating, or while waiting for someone else's calculation of the same pool.
+     *                 Once it returns true the calculation gives up by throwing a CancellationException.
+     * @param progress Told each time another part of the combinations has been counted
+     */
+    StatisticsGenerator(String message, RollRules rules, boolean cached, BooleanSupplier stopped, Progress progress) {
+        this.rules = rules;
+        this.stopped = stopped;
+        this.progress = progress;
         //Add all of the dice to the ArrayLists based on dice type
         diceList = new ArrayList<>();
         plotDice = new ArrayList<>();
@@ -33,180 +79,331 @@ public class StatisticsGenerator {
         else {
             return;
         }
-        if (diceList.size() + plotDice.size() > 6){
+        if (diceList.size() + plotDice.size() > 6 || !fitsInState(diceList)){
             overloaded = true;
             return;
         }
-        generateResults(diceList, plotDice);
-        
-        HashMap<Integer, Integer> resultHash = generateStatisticsTable();
-        statisticsMap = generateProbabilityHash(diceList, plotDice, resultHash);
+        if (!cached) {
+            calculate();
+            return;
+        }
+        StatisticsCache.Distribution distribution;
+        while (true) {
+            try {
+                distribution = StatisticsCache.get(StatisticsCache.key(rules, diceList, plotDice), () -> {
+                    calculate();
+                    return new StatisticsCache.Distribution(statisticsMap, doomMap);
+                }, stopped);
+                break;
+            } catch (CancellationException e) {
+                //Only give up if this calculation was stopped, not one it was waiting on
+                if (stopped.getAsBoolean()) {
+                    throw e;
+                }
+            }
+        }
+        statisticsMap = distribution.getTotals();
+        doomMap = distribution.getDoom();
+    }
 
-        HashMap<Integer, Integer> doomHash = generateDoomChance();
-        doomMap = generateProbabilityHash(diceList, plotDice, doomHash);
+    //Statistics of a pool found some other way, such as by rolling it many times
+    StatisticsGenerator(HashMap<Integer, Double> statisticsMap, HashMap<Integer, Double> doomMap) {
+        this.rules = RollRules.STANDARD;
+        this.statisticsMap = statisticsMap;
+        this.doomMap = doomMap;
+        validCombo = true;
     }
 
-    //Generate a HashMap with the roll as the keys and the percent as the values
-    private HashMap<Integer,Double> generateProbabilityHash(ArrayList<Integer> diceList, ArrayList<Integer> plotDice, HashMap<Integer, Integer> resultHash) {
-        int totalCombos = getTotalCombos(diceList, plotDice);
-        HashMap<Integer, Double> probHash = new HashMap<>();
-        for (Object o : resultHash.entrySet()) {
-            Map.Entry pair = (Map.Entry) o;
-            probHash.put((Integer) pair.getKey(), (Integer)pair.getValue() / (double)totalCombos * 100);
+    //Dice that can explode past MAX_VALUE can't be counted
+    private boolean fitsInState(ArrayList<Integer> diceList) {
+        for (int die : diceList) {
+            if (rules.getMaxValue(die) > RollRules.MAX_VALUE) {
+                return false;
+            }
         }
-        return probHash;
+        return true;
+    }
+
+    public static void main(String[] args) {
+        new StatisticsGenerator("d10 d12 d12");
     }
 
-    //Get the total number of combinations by finding the product of all of the number of faces in all of the dice
-    private int getTotalCombos(ArrayList<Integer> diceList, ArrayList<Integer> plotDice) {
-        int totalCombos = 1;
-        for (int combo : diceList) {
-            totalCombos *= combo;
+    /*
+    Finds the chance of each total and of each amount of doom by adding one die at a time to the chances of everything
+    the dice before it could have left behind, instead of enumerating every combination. Regular dice only have to
+    remember the doom so far and whichever is fewer of the dice that would be kept or the dice that would be dropped.
+    When every regular die is kept only their sum matters. Plot dice are always added, so they're folded into the totals
+    at the end. Each die is one part of the progress.
+     */
+    private void calculate() {
+        int parts = diceList.size() + plotDice.size();
+        int part = 0;
+        int keep = rules.getKeep();
+        int drop = Math.max(diceList.size() - keep, 0);
+        HashMap<Long, Double> states = new HashMap<>();
+        states.put(0L, 1.0);
+        for (int die : diceList) {
+            checkStopped();
+            states = keep <= drop ? addKeptDie(states, die, keep) : addSummedDie(states, die, drop);
+            progress.counted(++part, parts);
         }
 
-        /*Plot dice have a minimum value of the die size / 2
-        //This means that you need to divide it by two and add one to get the number of combinations from it if the
-        value is greater than 2 */
-        for (int pdCombo : plotDice) {
-            if (pdCombo > 2){
-                totalCombos *= pdCombo / 2 + 1 ;
-            }
+        HashMap<Integer, Double> totals = new HashMap<>();
+        HashMap<Integer, Double> doom = new HashMap<>();
+        for (Map.Entry<Long, Double> state : states.entrySet()) {
+            long key = state.getKey();
+            totals.merge(keep <= drop ? keptTotal(key) : summedTotal(key), state.getValue(), Double::sum);
+            doom.merge((int) (key >>> DOOM_SHIFT), state.getValue(), Double::sum);
+        }
+        for (int die : plotDice) {
+            checkStopped();
+            totals = addPlotDie(totals, die);
+            progress.counted(++part, parts);
         }
-        return totalCombos;
+        statisticsMap = toPercentages(totals);
+        doomMap = toPercentages(doom);
     }
 
-    public static void main(String[] args) {
-        new StatisticsGenerator("d10 d12 d12");
+    /*
+    States are the sum of the regular dice so far, with the lowest drop dice above SUM_BITS and the doom above
+    DOOM_SHIFT. The lowest dice are kept as MAX_VALUE + 1 minus their value, so keeping the highest of those keeps the
+    lowest dice.
+     */
+    private HashMap<Long, Double> addSummedDie(HashMap<Long, Double> states, int die, int drop) {
+        double[] outcomes = rules.getDieOutcomes(die);
+        HashMap<Long, Double> next = new HashMap<>();
+        for (Map.Entry<Long, Double> state : states.entrySet()) {
+            long key = state.getKey();
+            double chance = state.getValue();
+            long sum = key & ((1L << SUM_BITS) - 1);
+            long lowest = (key & ((1L << DOOM_SHIFT) - 1)) >>> SUM_BITS;
+            long doom = key >>> DOOM_SHIFT;
+            for (int value = 1; value < outcomes.length; value++) {
+                if (outcomes[value] > 0) {
+                    long dropped = drop > 0 ? keepHighest(lowest, RollRules.MAX_VALUE + 1 - value, drop) : 0;
+                    next.merge(sum + value | dropped << SUM_BITS | (doom + (rules.isDoom(value) ? 1 : 0)) << DOOM_SHIFT,
+                            chance * outcomes[value], Double::sum);
+                    countOutcome();
+                }
+            }
+        }
+        return next;
     }
 
-    private HashMap<Integer, Integer> generateDoomChance(){
-        //Add information to a <Integer, Double> hashmap
-        HashMap<Integer, Integer> doomHash = new HashMap<>();
-        for (DiceResult result: resultList) {
-            int key = result.getDoom();
-            if (!doomHash.containsKey(key)){
-                doomHash.put(key, 1);
+    //States are the kept dice so far, highest first in VALUE_BITS each, with the doom above DOOM_SHIFT
+    private HashMap<Long, Double> addKeptDie(HashMap<Long, Double> states, int die, int keep) {
+        double[] outcomes = rules.getDieOutcomes(die);
+        HashMap<Long, Double> next = new HashMap<>();
+        for (Map.Entry<Long, Double> state : states.entrySet()) {
+            long key = state.getKey();
+            double chance = state.getValue();
+            long doom = key >>> DOOM_SHIFT;
+            for (int value = 1; value < outcomes.length; value++) {
+                if (outcomes[value] > 0) {
+                    long kept = keepHighest(key, value, keep);
+                    next.merge(kept | (doom + (rules.isDoom(value) ? 1 : 0)) << DOOM_SHIFT,
+                            chance * outcomes[value], Double::sum);
+                    countOutcome();
+                }
             }
-            else {
-                doomHash.put(key, doomHash.get(key) + 1);
+        }
+        return next;
+    }
+
+    //Inserts a value into the kept dice of a state, dropping the lowest once more than keep are kept
+    private static long keepHighest(long state, int value, int keep) {
+        long kept = 0;
+        long carry = value;
+        for (int i = 0; i < keep; i++) {
+            int shift = i * VALUE_BITS;
+            long slot = (state >>> shift) & VALUE_MASK;
+            if (carry > slot) {
+                kept |= carry << shift;
+                carry = slot;
+            } else {
+                kept |= slot << shift;
             }
         }
-        return doomHash;
+        return kept;
     }
 
-    /**
-     * Generate a HashMap with keys of a number being rolled with the values as the number of combinations that would
-     * result in that roll
-     */
-    private HashMap<Integer, Integer> generateStatisticsTable() {
-        //Add information to a <Integer, Double> hashmap
-        HashMap<Integer, Integer> resultHash = new HashMap<>();
-        for (DiceResult result: resultList) {
-            int key = result.getResult();
-            if (!resultHash.containsKey(key)){
-                resultHash.put(key, 1);
+    private static int keptTotal(long state) {
+        int total = 0;
+        for (int shift = 0; shift < DOOM_SHIFT; shift += VALUE_BITS) {
+            total += (int) ((state >>> shift) & VALUE_MASK);
+        }
+        return total;
+    }
+
+    //The sum of a state from addSummedDie, less the dice it drops
+    private static int summedTotal(long state) {
+        int total = (int) (state & ((1L << SUM_BITS) - 1));
+        for (int shift = SUM_BITS; shift < DOOM_SHIFT; shift += VALUE_BITS) {
+            long lowest = (state >>> shift) & VALUE_MASK;
+            if (lowest > 0) {
+                total -= RollRules.MAX_VALUE + 1 - lowest;
             }
-            else {
-                resultHash.put(key, resultHash.get(key) + 1);
+        }
+        return total;
+    }
+
+    private HashMap<Integer, Double> addPlotDie(HashMap<Integer, Double> totals, int die) {
+        double[] outcomes = rules.getPlotDieOutcomes(die);
+        HashMap<Integer, Double> next = new HashMap<>();
+        for (Map.Entry<Integer, Double> total : totals.entrySet()) {
+            for (int value = 1; value < outcomes.length; value++) {
+                if (outcomes[value] > 0) {
+                    next.merge(total.getKey() + value, total.getValue() * outcomes[value], Double::sum);
+                    countOutcome();
+                }
             }
         }
-        return resultHash;
+        return next;
     }
 
-    //Prep method for generateResults to copy the dice list to prevent it from being modified
-    private void generateResults(ArrayList<Integer> diceList, ArrayList<Integer> plotDice){
-        ArrayList<Integer> diceListCopy = new ArrayList<>(diceList);
-            generateResults(diceListCopy, plotDice, new DiceResult());
+    private void countOutcome() {
+        if (++counted % CHECK_EVERY == 0) {
+            checkStopped();
+        }
     }
 
-    //Recursive method to generate an ArrayList of results
-    private void generateResults(ArrayList<Integer> diceList, ArrayList<Integer> plotDice, DiceResult result){
-        if (diceList.isEmpty()){
-            generatePDResults(plotDice, result);
+    private void checkStopped() {
+        if (stopped.getAsBoolean()) {
+            throw new CancellationException("Statistics calculation stopped");
         }
-        else {
-            ArrayList<Integer> diceListCopy = new ArrayList<>(diceList);
-            int diceNum = diceListCopy.remove(0);
-            for (int i = 1; i <= diceNum; i++){
-                DiceResult resultCopy = result.copy();
-                resultCopy.addDiceToResult(i);
-                generateResults(diceListCopy, plotDice, resultCopy);
-            }
+    }
+
+    private static HashMap<Integer, Double> toPercentages(HashMap<Integer, Double> chances) {
+        HashMap<Integer, Double> percentages = new HashMap<>();
+        for (Map.Entry<Integer, Double> chance : chances.entrySet()) {
+            percentages.put(chance.getKey(), chance.getValue() * 100);
         }
+        return percentages;
+    }
+
+    //Whether the pool had too many dice, or dice too big, to work out
+    boolean isOverloaded() {
+        return overloaded;
+    }
+
+    //The chance of rolling each total, as a percentage
+    Map<Integer, Double> getTotalProbabilities() {
+        return statisticsMap;
+    }
+
+    //The chance of generating each amount of doom, as a percentage
+    Map<Integer, Double> getDoomProbabilities() {
+        return doomMap;
     }
 
-    //Recursive method for handling plot dice
-    private void generatePDResults(ArrayList<Integer> plotDice, DiceResult result){
-        if (plotDice.isEmpty()){
-            resultList.add(result);
+    /**
+     * How a rolled total compares with the pool's other totals
+     *
+     * @return The chance of rolling less than the total plus half the chance of rolling it, from 0 to 1, or NaN if
+     * the pool has no statistics
+     */
+    double getPercentile(int total) {
+        if (statisticsMap == null) {
+            return Double.NaN;
         }
-        else {
-            ArrayList<Integer> diceListCopy = new ArrayList<>(plotDice);
-            int diceNum = diceListCopy.remove(0);
-            for (int i = diceNum / 2; i <= diceNum; i++){
-                DiceResult resultCopy = result.copy();
-                resultCopy.addPlotDice(i);
-                generatePDResults(diceListCopy, resultCopy);
+        double below = 0;
+        for (Map.Entry<Integer, Double> outcome : statisticsMap.entrySet()) {
+            if (outcome.getKey() < total) {
+                below += outcome.getValue();
+            } else if (outcome.getKey() == total) {
+                below += outcome.getValue() / 2;
             }
         }
+        return below / 100;
+    }
+
+    //How many standard deviations a total is above the pool's average total
+    double getZScore(int total) {
+        if (statisticsMap == null) {
+            return Double.NaN;
+        }
+        double mean = getAverage(statisticsMap);
+        double variance = 0;
+        for (Map.Entry<Integer, Double> outcome : statisticsMap.entrySet()) {
+            variance += (outcome.getKey() - mean) * (outcome.getKey() - mean) * outcome.getValue() / 100;
+        }
+        return variance > 0 ? (total - mean) / Math.sqrt(variance) : 0;
+    }
+
+    //The average doom the pool generates
+    double getExpectedDoom() {
+        return doomMap == null ? Double.NaN : getAverage(doomMap);
+    }
+
+    private static double getAverage(Map<Integer, Double> percentages) {
+        double average = 0;
+        for (Map.Entry<Integer, Double> outcome : percentages.entrySet()) {
+            average += outcome.getKey() * outcome.getValue() / 100;
+        }
+        return average;
     }
 
     //Generates a message that combines the probability of possible rolls and the probability of making a difficulty
-    public EmbedBuilder generateStatistics(MessageAuthor author){
+    public EmbedBuilder generateStatistics(Author author){
+        return generatePages(author).get(0);
+    }
+
+    /*
+    Generates the statistics as pages. Pools with so many possible totals that their chances don't fit in one field
+    have their totals split across pages, each with the chance to meet each difficulty and to generate doom.
+     */
+    public List<EmbedBuilder> generatePages(Author author){
         if (overloaded){
-            return new EmbedBuilder().setTitle("That's way too many dice for me to handle. Try using less dice.");
+            return Collections.singletonList(new EmbedBuilder()
+                    .setTitle("That's way too many dice for me to handle. Try using less dice."));
         }
         if (!validCombo){
-            return new EmbedBuilder().setTitle("I can't find any dice in your command. Try again.");
+            return Collections.singletonList(new EmbedBuilder()
+                    .setTitle("I can't find any dice in your command. Try again."));
         }
-        String result = generateIndividualStatistics(statisticsMap);
-        String difficulties = generateMeetingDifficulty();
-        String doom = generateIndividualStatistics(doomMap);
+        int[] totals = ResultFormatter.sortedKeys(statisticsMap);
+        int[] pageStarts = ResultFormatter.paginate(statisticsMap, totals);
+        String difficulties = generateMeetingDifficulty(totals);
+        String doom = ResultFormatter.formatPercentages(doomMap);
 
         Random random = new Random();
-        return new EmbedBuilder()
-                .setTitle(TwoDee.getRollTitleMessage())
-                .setAuthor(author)
-                .setColor(new Color(random.nextFloat() , random.nextFloat(), random.nextFloat()))
-                .addField("Chance to roll a", result, true)
-                .addField("Chance to meet", difficulties, true)
-                .addField("Chance to generate doom", doom, true);
-    }
-
-    //Loop through HashMap, check for rolls greater than difficulty, and sum their values to calculate the chance of
-    //beating that difficulty. Rounds the probability to 4 decimal places.
-    private String generateMeetingDifficulty() {
+        Color color = new Color(random.nextFloat() , random.nextFloat(), random.nextFloat());
+        String title = TwoDee.getRollTitleMessage();
+        int pageCount = pageStarts.length - 1;
+        List<EmbedBuilder> pages = new ArrayList<>(pageCount);
+        for (int page = 0; page < pageCount; page++) {
+            EmbedBuilder embed = new EmbedBuilder()
+                    .setTitle(title)
+                    .setAuthor(author.getDisplayName(), null, author.getAvatarUrl())
+                    .setColor(color)
+                    .addField("Chance to roll a", ResultFormatter.formatPercentages(statisticsMap, totals,
+                            pageStarts[page], pageStarts[page + 1]), true)
+                    .addField("Chance to meet", difficulties, true)
+                    .addField("Chance to generate doom", doom, true);
+            if (pageCount > 1) {
+                embed.setFooter("Page " + (page + 1) + " of " + pageCount);
+            }
+            pages.add(embed);
+        }
+        return pages;
+    }
+
+    //Sums the chance of every total at or over each difficulty, going through the totals from the highest down
+    private String generateMeetingDifficulty(int[] totals) {
         StringBuilder result = new StringBuilder();
-        DecimalFormat df = new DecimalFormat("0.##");
         String[] difficultyNames = {"Easy", "Average", "Hard", "Formidable", "Heroic", "Incredible", "Ridiculous", "Impossible"};
         int[] difficulty = {3, 7, 11, 15, 19, 23, 27, 31};
-        double[] prob = new double[8];
-        String[] probString = new String[8];
-        for (int i = 0; i < difficulty.length; i++) {
-            prob[i] = 0.0;
-            for (Object o : statisticsMap.entrySet()) {
-                Map.Entry pair = (Map.Entry) o;
-                if (difficulty[i] <= (Integer) pair.getKey()){
-                    prob[i] += (double) pair.getValue();
-                }
+        double[] prob = new double[difficulty.length];
+        double atLeast = 0;
+        int next = totals.length - 1;
+        for (int i = difficulty.length - 1; i >= 0; i--) {
+            while (next >= 0 && totals[next] >= difficulty[i]) {
+                atLeast += statisticsMap.get(totals[next--]);
             }
-            probString[i] = df.format(prob[i]);
+            prob[i] = atLeast;
         }
         for (int i = 0; i < difficultyNames.length; i++){
-            result.append(difficultyNames[i]).append(": ").append(probString[i]).append("%\n");
-        }
-        return result.toString();
-    }
-
-    //Generate the probability of each possible roll and rounds it to two decimal places.
-    private String generateIndividualStatistics(HashMap map) {
-        //Iterate through HashMap to generate message
-        StringBuilder result = new StringBuilder();
-        for (Object o : map.entrySet()) {
-            Map.Entry pair = (Map.Entry) o;
-            DecimalFormat df = new DecimalFormat("0.#####");
-            String roundedChance = df.format(Double.valueOf(pair.getValue().toString()));
-            result.append(pair.getKey()).append(": ").append(roundedChance).append("%\n");
+            result.append(difficultyNames[i]).append(": ").append(ResultFormatter.formatShort(prob[i])).append("%\n");
         }
         return result.toString();
     }
@@ -0,0 +1,161 @@
+package logic;
+
+import config.ConfigRegistry;
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+import transport.Author;
+import transport.Channel;
+import transport.Reply;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a ~s command. Pools whose odds can be counted within QUICK_MILLIS are answered straight away. For larger pools
+ * the bot first replies with estimates from rolling the pool for a moment, then counts the odds while editing the reply
+ * with its progress, and finally replaces the estimates with the exact odds.
+ * <p>
+ * The player who asked can stop the calculation by reacting with a cross or sending ~cancel, and it gives up on its own
+ * after statistics.timeout seconds (20 by default). Either way the reply keeps the estimates.
+ */
+public class StatisticsJob {
+
+    private static final String CANCEL_EMOJI = "\u274C";
+    //How long a pool is counted before the player is sent estimates while they wait
+    private static final long QUICK_MILLIS = 300;
+    private static final long ESTIMATE_MILLIS = 200;
+    private static final int ESTIMATE_BATCH = 10_000;
+    //Discord allows 5 edits of a message every 5 seconds
+    private static final long EDIT_INTERVAL_MILLIS = 1500;
+    private static final int DEFAULT_TIMEOUT_SECONDS = 20;
+
+    //Player ID -> their statistics jobs that are still running
+    private static final ConcurrentHashMap<String, Set<StatisticsJob>> running = new ConcurrentHashMap<>();
+
+    private final String message;
+    private final Author author;
+    private final Channel channel;
+    private final RollRules rules;
+    private volatile boolean cancelled;
+    private long deadline;
+    private long lastEdit;
+
+    public StatisticsJob(String message, Author author, Channel channel, RollRules rules) {
+        this.message = message;
+        this.author = author;
+        this.channel = channel;
+        this.rules = rules;
+    }
+
+    /**
+     * Stops every statistics calculation a player is running
+     *
+     * @return The number of calculations stopped
+     */
+    public static int cancel(String authorID) {
+        Set<StatisticsJob> jobs = running.get(authorID);
+        if (jobs == null) {
+            return 0;
+        }
+        int count = 0;
+        for (StatisticsJob job : jobs) {
+            job.cancelled = true;
+            count++;
+        }
+        return count;
+    }
+
+    public void run() {
+        long quick = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUICK_MILLIS);
+        try {
+            Pages.send(channel, new StatisticsGenerator(message, rules, true, () -> System.nanoTime() > quick,
+                    StatisticsGenerator.NO_PROGRESS).generatePages(author));
+            return;
+        } catch (CancellationException e) {
+            //Too big to answer straight away
+        }
+
+        String timeout = ConfigRegistry.get().get("statistics.timeout");
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(
+                timeout != null ? Integer.parseInt(timeout.trim()) : DEFAULT_TIMEOUT_SECONDS);
+        EmbedBuilder estimate = estimate();
+        Reply reply = channel.send(estimate.setFooter("Calculating the exact odds... React with " + CANCEL_EMOJI
+                + " or send ~cancel to stop")).join();
+        Runnable stopListening = reply.onReaction(CANCEL_EMOJI, userID -> {
+            if (userID.equals(author.getIdAsString())) {
+                cancelled = true;
+            }
+        });
+        running.computeIfAbsent(author.getIdAsString(), id -> ConcurrentHashMap.newKeySet()).add(this);
+        lastEdit = System.nanoTime();
+        try {
+            StatisticsGenerator exact = new StatisticsGenerator(message, rules, true, this::isStopped, (parts, of) -> {
+                if (System.nanoTime() - lastEdit >= TimeUnit.MILLISECONDS.toNanos(EDIT_INTERVAL_MILLIS)) {
+                    lastEdit = System.nanoTime();
+                    reply.edit(estimate.setFooter(String.format("Calculating the exact odds... %d%% done",
+                            parts * 100 / of)));
+                }
+            });
+            List<EmbedBuilder> pages = exact.generatePages(author);
+            reply.edit(pages.get(0));
+            Pages.attach(reply, pages);
+        } catch (CancellationException e) {
+            reply.edit(estimate.setFooter(cancelled ? "Cancelled. These are estimates."
+                    : "Ran out of time for the exact odds. These are estimates."));
+        } finally {
+            running.computeIfPresent(author.getIdAsString(), (id, jobs) -> {
+                jobs.remove(this);
+                return jobs.isEmpty() ? null : jobs;
+            });
+            stopListening.run();
+        }
+    }
+
+    private boolean isStopped() {
+        return cancelled || System.nanoTime() > deadline;
+    }
+
+    //Rolls the pool as many times as it can in ESTIMATE_MILLIS and turns the results into percentages
+    private EmbedBuilder estimate() {
+        DiceRoller roller = new DiceRoller(message, rules);
+        Random random = new Random();
+        HashMap<Integer, Integer> totals = new HashMap<>();
+        HashMap<Integer, Integer> doom = new HashMap<>();
+        ArrayList<Integer> diceResults = new ArrayList<>();
+        ArrayList<Integer> pdResults = new ArrayList<>();
+        ArrayList<Integer> topTwo = new ArrayList<>();
+        ArrayList<Integer> dropped = new ArrayList<>();
+        long stop = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ESTIMATE_MILLIS);
+        int rolls = 0;
+        while (System.nanoTime() < stop) {
+            for (int i = 0; i < ESTIMATE_BATCH; i++) {
+                diceResults.clear();
+                pdResults.clear();
+                topTwo.clear();
+                dropped.clear();
+                //The roller keeps a running count of doom, so take the difference
+                int doomBefore = roller.getDoom();
+                totals.merge(roller.roll(random, diceResults, pdResults, topTwo, dropped), 1, Integer::sum);
+                doom.merge(roller.getDoom() - doomBefore, 1, Integer::sum);
+            }
+            rolls += ESTIMATE_BATCH;
+        }
+        return new StatisticsGenerator(toPercentages(totals, rolls), toPercentages(doom, rolls))
+                .generateStatistics(author)
+                .setDescription(String.format("Estimated from %,d rolls", rolls));
+    }
+
+    private static HashMap<Integer, Double> toPercentages(Map<Integer, Integer> counts, int rolls) {
+        HashMap<Integer, Double> percentages = new HashMap<>();
+        for (Map.Entry<Integer, Integer> outcome : counts.entrySet()) {
+            percentages.put(outcome.getKey(), outcome.getValue() * 100.0 / rolls);
+        }
+        return percentages;
+    }
+}
@@ -0,0 +1,203 @@
+package logic;
+
+import audit.AuditLog;
+import campaign.Campaign;
+import config.ConfigRegistry;
+import sheets.CharacterSheet;
+import startup.Shutdown;
+import startup.Startup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out the statistics of the pools players are likely to ask for before they ask, so ~s answers straight away.
+ * Each skill on a player's sheet is a likely pool on its own and together with each of their other skills, with no
+ * plot die or with a pd4, pd6 or pd8.
+ * <p>
+ * A pass runs every statistics.precompute minutes (10 by default, 0 turns it off) on a low priority thread, skipping
+ * pools that are already cached. Precomputed pools never take up more than half of the statistics cache, counting the
+ * ones from earlier passes that haven't been dropped from it yet. It only calculates while the bot is idle: a
+ * calculation gives up as soon as a command arrives and starts again once no command has arrived for IDLE_MILLIS.
+ */
+public class StatisticsPrecomputer {
+
+    private static final String[] PLOT_DICE = {"", " pd4", " pd6", " pd8"};
+    private static final long IDLE_MILLIS = 2000;
+    private static final int DEFAULT_INTERVAL_MINUTES = 10;
+    //Leaves most of the statistics cache to the pools players actually ask for
+    private static final int MAX_POOLS = StatisticsCache.MAX_POOLS / 2;
+    //Cache keys of the pools precomputed so far, so the pools from every pass together stay under MAX_POOLS
+    private static final Set<String> precomputed = ConcurrentHashMap.newKeySet();
+
+    private static final ScheduledExecutorService precomputer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "statistics-precompute");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private static volatile long lastCommand = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+
+    private StatisticsPrecomputer() {
+    }
+
+    //Starts precomputing the campaigns' likely pools once the bot is warm
+    public static void start(List<Campaign> campaigns) {
+        int interval = ConfigRegistry.get().getInt("statistics.precompute", DEFAULT_INTERVAL_MINUTES);
+        if (interval <= 0) {
+            return;
+        }
+        precomputer.scheduleWithFixedDelay(() -> {
+            try {
+                Startup.awaitReady();
+                int calculated = precompute(campaigns);
+                if (calculated > 0) {
+                    AuditLog.info("statistics", "Precomputed the statistics of " + calculated + " pools");
+                }
+            } catch (RuntimeException e) {
+                AuditLog.error("statistics", "Cannot precompute statistics", e);
+            }
+        }, 0, interval, TimeUnit.MINUTES);
+    }
+
+    //Called for every command, so precomputing steps aside while the bot is busy
+    public static void commandReceived() {
+        lastCommand = System.nanoTime();
+    }
+
+    /**
+     * Calculates every likely pool that isn't cached yet
+     *
+     * @return The number of pools calculated
+     */
+    static int precompute(List<Campaign> campaigns) {
+        int calculated = 0;
+        for (Pool pool : getPools(campaigns)) {
+            while (true) {
+                if (!waitUntilIdle()) {
+                    return calculated;
+                }
+                try {
+                    new StatisticsGenerator(pool.dice, pool.rules, true, StatisticsPrecomputer::isBusy,
+                            StatisticsGenerator.NO_PROGRESS);
+                    precomputed.add(pool.key);
+                    calculated++;
+                    break;
+                } catch (CancellationException e) {
+                    //A command arrived, so try again once it's quiet
+                }
+            }
+        }
+        return calculated;
+    }
+
+    //The likely pools that aren't cached yet and the rules they're rolled by, most likely first
+    static List<Pool> getPools(List<Campaign> campaigns) {
+        List<Pool> pools = new ArrayList<>();
+        //Pools precomputed by earlier passes count until the cache drops them
+        precomputed.removeIf(key -> !StatisticsCache.contains(key));
+        int room = MAX_POOLS - precomputed.size();
+        if (room <= 0) {
+            return pools;
+        }
+        Set<String> keys = new HashSet<>();
+        for (Campaign campaign : campaigns) {
+            RollRules rules = campaign.getRules();
+            List<List<String>> players = new ArrayList<>();
+            for (List<List<Object>> rows : campaign.getCharacters().getAll().values()) {
+                players.add(getSkillDice(new CharacterSheet(rows)));
+            }
+            List<String> candidates = new ArrayList<>();
+            for (String plotDie : PLOT_DICE) {
+                for (List<String> skills : players) {
+                    for (String skill : skills) {
+                        candidates.add(skill + plotDie);
+                    }
+                }
+            }
+            for (String plotDie : PLOT_DICE) {
+                for (List<String> skills : players) {
+                    for (int i = 0; i < skills.size(); i++) {
+                        for (int j = i + 1; j < skills.size(); j++) {
+                            candidates.add(skills.get(i) + " " + skills.get(j) + plotDie);
+                        }
+                    }
+                }
+            }
+            for (String pool : candidates) {
+                ArrayList<Integer> dice = new ArrayList<>();
+                ArrayList<Integer> plotDice = new ArrayList<>();
+                new DiceParameterHandler(new ArrayList<>(Arrays.asList(pool.split(" "))), dice, plotDice)
+                        .addDiceToPools();
+                String key = StatisticsCache.key(rules, dice, plotDice);
+                if (dice.size() + plotDice.size() <= 6 && !StatisticsCache.contains(key) && keys.add(key)) {
+                    pools.add(new Pool(pool, rules, key));
+                    if (pools.size() >= room) {
+                        return pools;
+                    }
+                }
+            }
+        }
+        return pools;
+    }
+
+    //The dice of every skill on a sheet
+    private static List<String> getSkillDice(CharacterSheet sheet) {
+        List<String> skillDice = new ArrayList<>();
+        for (List<Object> row : sheet.getRows()) {
+            if (row.size() != 2) {
+                continue;
+            }
+            try {
+                String dice = CommandHandler.retrieveDice(String.valueOf(row.get(0)), sheet);
+                if (dice != null && !dice.isEmpty()) {
+                    skillDice.add(dice);
+                }
+            } catch (NumberFormatException e) {
+                //A heading or note rather than a skill
+            }
+        }
+        return skillDice;
+    }
+
+    //Waits until no command has arrived for IDLE_MILLIS. Returns false if the bot is shutting down instead.
+    private static boolean waitUntilIdle() {
+        while (isBusy()) {
+            if (Shutdown.isStopping()) {
+                return false;
+            }
+            try {
+                Thread.sleep(IDLE_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBusy() {
+        return Shutdown.isStopping() || System.nanoTime() - lastCommand < TimeUnit.MILLISECONDS.toNanos(IDLE_MILLIS);
+    }
+
+    //A pool of dice, the rules it's rolled by and its cache key
+    static class Pool {
+        final String dice;
+        final RollRules rules;
+        final String key;
+
+        Pool(String dice, RollRules rules, String key) {
+            this.dice = dice;
+            this.rules = rules;
+            this.key = key;
+        }
+    }
+}
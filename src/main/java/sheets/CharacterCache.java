@@ -0,0 +1,160 @@
+package sheets;
+
+import audit.AuditLog;
+import config.PlayerDirectory;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * Keeps a campaign's character sheets in memory so rolls with skill names don't wait on Google Sheets.
+ * <p>
+ * Sheets are loaded for every player when the bot starts (restored from the warm-state snapshot until then) and
+ * reloaded whenever a player joins the session voice channel, so the first roll of the night is as fast as every roll
+ * after it. SheetSync keeps them up to date in
+ * between. Every campaign has its own cache, but they share the threads that load sheets since every load counts
+ * against the same Sheets quota anyway.
+ */
+public class CharacterCache {
+
+    private static final ExecutorService warmer = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "character-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Set<CharacterCache> caches = ConcurrentHashMap.newKeySet();
+    private static volatile SheetSource source = new GoogleSheetSource();
+
+    private final ConcurrentHashMap<String, CharacterSheet> characters = new ConcurrentHashMap<>();
+    private final String spreadsheetID;
+    private final Supplier<PlayerDirectory> players;
+
+    /**
+     * @param spreadsheetID The spreadsheet with the campaign's characters on its Data sheet
+     * @param players       The campaign's players. The supplier is called every time so configuration changes are
+     *                      picked up.
+     */
+    public CharacterCache(String spreadsheetID, Supplier<PlayerDirectory> players) {
+        this.spreadsheetID = spreadsheetID;
+        this.players = players;
+        caches.add(this);
+    }
+
+    //Returns a player's character sheet, downloading it if it hasn't been loaded yet
+    public CharacterSheet get(String id) throws IOException, GeneralSecurityException {
+        CharacterSheet cached = characters.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        return refresh(id, load(id, SheetsScheduler.Priority.INTERACTIVE));
+    }
+
+    //Reloads a player's character sheet in the background. The future completes when the load has finished or failed.
+    public CompletableFuture<Void> warm(String id) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                refresh(id, load(id, SheetsScheduler.Priority.BACKGROUND));
+            } catch (IOException | GeneralSecurityException e) {
+                AuditLog.error("sheets", "Cannot load the character sheet of " + id, e);
+            }
+        }, warmer);
+    }
+
+    //Authorizes the Sheets client and loads every player's character sheet in parallel
+    public CompletableFuture<Void> warmAll(Collection<String> ids) {
+        connect();
+        List<CompletableFuture<Void>> loads = new ArrayList<>();
+        for (String id : ids) {
+            loads.add(warm(id));
+        }
+        return CompletableFuture.allOf(loads.toArray(new CompletableFuture[0]));
+    }
+
+    //Puts a copy of a player's sheet saved earlier in the cache, to be used until a fresh copy is loaded
+    public void restore(String id, List<List<Object>> rows) {
+        characters.putIfAbsent(id, new CharacterSheet(rows));
+    }
+
+    //The rows of every sheet in the cache, by player
+    public Map<String, List<List<Object>>> getAll() {
+        Map<String, List<List<Object>>> all = new HashMap<>();
+        for (Map.Entry<String, CharacterSheet> character : characters.entrySet()) {
+            all.put(character.getKey(), character.getValue().getRows());
+        }
+        return all;
+    }
+
+    //Authorizes the Sheets client in the background, so the OAuth flow is out of the way before the first load
+    public static void connect() {
+        if (source instanceof GoogleSheetSource) {
+            warmer.execute(() -> {
+                try {
+                    SheetsQuickstart.getService();
+                } catch (IOException | GeneralSecurityException e) {
+                    AuditLog.error("sheets", "Cannot connect to Google Sheets", e);
+                }
+            });
+        }
+    }
+
+    //Applies a newer copy of a player's sheet, only re-indexing the rows that changed
+    CharacterSheet refresh(String id, List<List<Object>> rows) {
+        CharacterSheet created = new CharacterSheet(rows);
+        CharacterSheet existing = characters.putIfAbsent(id, created);
+        if (existing == null) {
+            return created;
+        }
+        int changed = existing.update(rows);
+        if (changed > 0) {
+            AuditLog.info("sheets", changed + " rows changed for " + id);
+        }
+        return existing;
+    }
+
+    //The players whose sheets are in memory
+    Set<String> cachedIDs() {
+        return characters.keySet();
+    }
+
+    public String getSpreadsheetID() {
+        return spreadsheetID;
+    }
+
+    //The player's character columns on the Data sheet, e.g. "Data!A1:B270"
+    String getRange(String id) throws IOException {
+        return SheetsQuickstart.getPlayer(players.get(), id).getCharacterRange();
+    }
+
+    //The first of the player's character columns, e.g. "A"
+    String getFirstColumn(String id) throws IOException {
+        return SheetsQuickstart.getPlayer(players.get(), id).getFirstColumn();
+    }
+
+    static SheetSource getSource() {
+        return source;
+    }
+
+    //Reads character sheets from somewhere other than Google Sheets, such as a LocalSheetSource
+    public static void setSource(SheetSource newSource) {
+        source = newSource;
+        for (CharacterCache cache : caches) {
+            cache.characters.clear();
+        }
+    }
+
+    private List<List<Object>> load(String id, SheetsScheduler.Priority priority)
+            throws IOException, GeneralSecurityException {
+        return source.read(spreadsheetID, getRange(id), priority);
+    }
+}
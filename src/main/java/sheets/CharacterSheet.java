@@ -0,0 +1,144 @@
+package sheets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A player's character sheet with its skills indexed by name. When a newer copy of the sheet is applied only the rows
+ * that changed are re-indexed. A SkillIndex of the names is rebuilt alongside, so skills can also be found by prefix,
+ * abbreviation or the closest spelling.
+ * <p>
+ * The rows and both indexes are published together as one immutable snapshot, so a lookup running during an update
+ * sees either the old sheet or the new one, never the new rows with the old index.
+ */
+public class CharacterSheet {
+
+    private volatile Snapshot snapshot;
+
+    public CharacterSheet(List<List<Object>> rows) {
+        List<List<Object>> copied = copy(rows);
+        Map<String, Integer> skillRows = new HashMap<>();
+        for (int i = 0; i < copied.size(); i++) {
+            index(skillRows, copied.get(i), i);
+        }
+        snapshot = new Snapshot(copied, skillRows);
+    }
+
+    /**
+     * Finds a skill by its name, or by the start of its name or its initials if only one skill matches
+     *
+     * @return The row of the skill as {name, value}, or null if the character doesn't have the skill
+     */
+    public List<Object> findSkill(String name) {
+        Snapshot current = snapshot;
+        String normalized = normalize(name);
+        Integer row = current.skillRows.get(normalized);
+        if (row == null) {
+            String resolved = current.skillIndex.resolve(normalized);
+            row = resolved == null ? null : current.skillRows.get(resolved);
+        }
+        return row == null ? null : current.rows.get(row);
+    }
+
+    //The names of the skills that a name findSkill can't find most likely meant, closest first
+    public List<String> suggestSkills(String name) {
+        return snapshot.skillIndex.suggest(normalize(name));
+    }
+
+    public List<List<Object>> getRows() {
+        return snapshot.rows;
+    }
+
+    /**
+     * Replaces the sheet's rows with a newer copy of the sheet
+     *
+     * @return The number of rows that changed
+     */
+    public synchronized int update(List<List<Object>> newRows) {
+        Snapshot old = snapshot;
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < Math.max(old.rows.size(), newRows.size()); i++) {
+            if (!Objects.equals(rowAt(old.rows, i), rowAt(newRows, i))) {
+                changed.add(i);
+            }
+        }
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        //Built off to the side and swapped in at once
+        List<List<Object>> rows = copy(newRows);
+        Map<String, Integer> skillRows = new HashMap<>(old.skillRows);
+        for (int i : changed) {
+            unindex(skillRows, rows, rowAt(old.rows, i), i);
+            index(skillRows, rowAt(rows, i), i);
+        }
+        snapshot = new Snapshot(rows, skillRows);
+        return changed.size();
+    }
+
+    //Skill names are matched without spaces or capitalization (Euphemanu Dance -> euphemanudance)
+    public static String normalize(String skillName) {
+        return skillName.replaceAll("\\s+", "").toLowerCase();
+    }
+
+    private static void index(Map<String, Integer> skillRows, List<Object> row, int i) {
+        if (isSkill(row)) {
+            skillRows.merge(normalize(String.valueOf(row.get(0))), i, Math::min);
+        }
+    }
+
+    //Removes a row from the index. If a later row has the same name, that row takes its place.
+    private static void unindex(Map<String, Integer> skillRows, List<List<Object>> rows, List<Object> row, int i) {
+        if (!isSkill(row)) {
+            return;
+        }
+        String name = normalize(String.valueOf(row.get(0)));
+        if (skillRows.remove(name, i)) {
+            for (int j = 0; j < rows.size(); j++) {
+                List<Object> other = rows.get(j);
+                if (j != i && isSkill(other) && normalize(String.valueOf(other.get(0))).equals(name)) {
+                    skillRows.merge(name, j, Math::min);
+                    break;
+                }
+            }
+        }
+    }
+
+    //Skills are rows with exactly a name and a value
+    private static boolean isSkill(List<Object> row) {
+        return row != null && row.size() == 2;
+    }
+
+    private static List<Object> rowAt(List<List<Object>> rows, int i) {
+        return i < rows.size() ? rows.get(i) : null;
+    }
+
+    private static List<List<Object>> copy(List<List<Object>> rows) {
+        List<List<Object>> copy = new ArrayList<>(rows.size());
+        for (List<Object> row : rows) {
+            copy.add(Collections.unmodifiableList(new ArrayList<>(row)));
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    //One version of the sheet: its rows, normalized skill name -> the first row with that name, and the SkillIndex
+    private static class Snapshot {
+        private final List<List<Object>> rows;
+        private final Map<String, Integer> skillRows;
+        private final SkillIndex skillIndex;
+
+        Snapshot(List<List<Object>> rows, Map<String, Integer> skillRows) {
+            this.rows = rows;
+            this.skillRows = Collections.unmodifiableMap(skillRows);
+            Map<String, String> names = new HashMap<>();
+            for (Map.Entry<String, Integer> skill : skillRows.entrySet()) {
+                names.put(skill.getKey(), String.valueOf(rows.get(skill.getValue()).get(0)).trim());
+            }
+            skillIndex = new SkillIndex(names);
+        }
+    }
+}
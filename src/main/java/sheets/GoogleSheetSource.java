@@ -0,0 +1,62 @@
+package sheets;
+
+import audit.AuditLog;
+import com.google.api.services.sheets.v4.Sheets;
+import com.google.api.services.sheets.v4.model.BatchGetValuesResponse;
+import com.google.api.services.sheets.v4.model.UpdateValuesResponse;
+import com.google.api.services.sheets.v4.model.ValueRange;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Reads and writes spreadsheet values in Google Sheets through the SheetsScheduler
+ */
+public class GoogleSheetSource implements SheetSource {
+
+    @Override
+    public List<List<Object>> read(String spreadsheetId, String range, SheetsScheduler.Priority priority)
+            throws IOException, GeneralSecurityException {
+        final Sheets service = SheetsQuickstart.getService();
+        ValueRange result = SheetsScheduler.getInstance().execute(spreadsheetId + "!" + range, priority,
+                () -> service.spreadsheets().values().get(spreadsheetId, range).execute());
+        return valuesOf(result);
+    }
+
+    //Reads every range in a single request
+    @Override
+    public List<List<List<Object>>> readAll(String spreadsheetId, List<String> ranges, SheetsScheduler.Priority priority)
+            throws IOException, GeneralSecurityException {
+        final Sheets service = SheetsQuickstart.getService();
+        BatchGetValuesResponse response = SheetsScheduler.getInstance().execute(spreadsheetId + "!" + ranges, priority,
+                () -> service.spreadsheets().values().batchGet(spreadsheetId).setRanges(ranges).execute());
+        List<List<List<Object>>> results = new ArrayList<>();
+        for (ValueRange valueRange : response.getValueRanges()) {
+            results.add(valuesOf(valueRange));
+        }
+        return results;
+    }
+
+    //Writes the values as they are, without Sheets parsing them as formulas. Later reads of the range can fall back to
+    //what was written.
+    @Override
+    public void write(String spreadsheetId, String range, List<List<Object>> values)
+            throws IOException, GeneralSecurityException {
+        final Sheets service = SheetsQuickstart.getService();
+        ValueRange body = new ValueRange().setValues(values);
+        UpdateValuesResponse result = SheetsScheduler.getInstance().execute(null, SheetsScheduler.Priority.FLUSH,
+                () -> service.spreadsheets().values().update(spreadsheetId, range, body)
+                        .setValueInputOption("RAW")
+                        .execute());
+        SheetsScheduler.getInstance().remember(spreadsheetId + "!" + range, body);
+        AuditLog.info("sheets", result.getUpdatedCells() + " cells updated");
+    }
+
+    //Sheets leaves out values entirely when a range is empty
+    private static List<List<Object>> valuesOf(ValueRange range) {
+        return range.getValues() != null ? range.getValues() : Collections.emptyList();
+    }
+}
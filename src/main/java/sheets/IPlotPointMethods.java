@@ -4,4 +4,9 @@ public interface IPlotPointMethods {
     int setPlotPoints(String target, int number);
 
     int getPlotPoints(String target);
+
+    //Adds to a player's plot points and returns the new value. Stores that can do this atomically should.
+    default int addPlotPoints(String target, int delta) {
+        return setPlotPoints(target, getPlotPoints(target) + delta);
+    }
 }
@@ -0,0 +1,112 @@
+package sheets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory stand-in for Google Sheets. Cells are set directly and read back with the same A1 ranges the bot sends
+ * to Google, trimmed the same way Google trims them: empty cells at the end of a row and empty rows at the end of a
+ * range are left out.
+ */
+public class LocalSheetSource implements SheetSource {
+
+    private static final String DEFAULT_SHEET = "Sheet1";
+
+    //Spreadsheet ID + "!" + sheet name -> rows of cells
+    private final ConcurrentHashMap<String, List<List<Object>>> sheets = new ConcurrentHashMap<>();
+
+    //Sets a single cell, e.g. setCell(id, "Data", "B12", "d8")
+    public void setCell(String spreadsheetId, String sheetName, String cell, Object value) {
+        int[] position = parseCell(cell);
+        setCell(spreadsheetId + "!" + sheetName, position[0], position[1], value);
+    }
+
+    @Override
+    public List<List<Object>> read(String spreadsheetId, String range, SheetsScheduler.Priority priority) {
+        String sheetName = sheetName(range);
+        String cells = cells(range);
+        String[] corners = cells.split(":");
+        int[] start = parseCell(corners[0]);
+        int[] end = corners.length > 1 ? parseCell(corners[1]) : start;
+
+        List<List<Object>> result = new ArrayList<>();
+        List<List<Object>> grid = sheets.get(spreadsheetId + "!" + sheetName);
+        if (grid == null) {
+            return result;
+        }
+        synchronized (grid) {
+            for (int rowIndex = start[1]; rowIndex <= end[1] && rowIndex < grid.size(); rowIndex++) {
+                List<Object> row = grid.get(rowIndex);
+                List<Object> values = new ArrayList<>();
+                for (int column = start[0]; column <= end[0] && column < row.size(); column++) {
+                    values.add(row.get(column));
+                }
+                while (!values.isEmpty() && "".equals(values.get(values.size() - 1))) {
+                    values.remove(values.size() - 1);
+                }
+                result.add(values);
+            }
+        }
+        while (!result.isEmpty() && result.get(result.size() - 1).isEmpty()) {
+            result.remove(result.size() - 1);
+        }
+        return result;
+    }
+
+    @Override
+    public List<List<List<Object>>> readAll(String spreadsheetId, List<String> ranges, SheetsScheduler.Priority priority) {
+        List<List<List<Object>>> results = new ArrayList<>();
+        for (String range : ranges) {
+            results.add(read(spreadsheetId, range, priority));
+        }
+        return results;
+    }
+
+    @Override
+    public void write(String spreadsheetId, String range, List<List<Object>> values) {
+        int[] start = parseCell(cells(range).split(":")[0]);
+        String key = spreadsheetId + "!" + sheetName(range);
+        for (int row = 0; row < values.size(); row++) {
+            for (int column = 0; column < values.get(row).size(); column++) {
+                setCell(key, start[0] + column, start[1] + row, values.get(row).get(column));
+            }
+        }
+    }
+
+    private void setCell(String key, int column, int rowIndex, Object value) {
+        List<List<Object>> grid = sheets.computeIfAbsent(key, sheet -> new ArrayList<>());
+        synchronized (grid) {
+            while (grid.size() <= rowIndex) {
+                grid.add(new ArrayList<>());
+            }
+            List<Object> row = grid.get(rowIndex);
+            while (row.size() <= column) {
+                row.add("");
+            }
+            row.set(column, value);
+        }
+    }
+
+    //The sheet a range such as "Data!A1:B270" is on, or the first sheet if it doesn't name one
+    private static String sheetName(String range) {
+        return range.contains("!") ? range.substring(0, range.indexOf('!')) : DEFAULT_SHEET;
+    }
+
+    //The cells of a range without its sheet, e.g. "A1:B270"
+    private static String cells(String range) {
+        return range.contains("!") ? range.substring(range.indexOf('!') + 1) : range;
+    }
+
+    //Converts a cell such as "AB12" into a zero based {column, row}
+    private static int[] parseCell(String cell) {
+        int column = 0;
+        int i = 0;
+        while (i < cell.length() && Character.isLetter(cell.charAt(i))) {
+            column = column * 26 + (Character.toUpperCase(cell.charAt(i)) - 'A' + 1);
+            i++;
+        }
+        int row = Integer.parseInt(cell.substring(i));
+        return new int[]{column - 1, row - 1};
+    }
+}
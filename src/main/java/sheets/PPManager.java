@@ -1,36 +1,91 @@
 package sheets;
 
-import com.google.api.services.sheets.v4.model.ValueRange;
-import logic.UserInfo;
+import audit.AuditLog;
+import config.ConfigRegistry;
+import config.PlayerDirectory;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
- * This class handles the getting and setting of the plot points from a player
+ * This class handles the getting and setting of the plot points from a player. Changes to one player's plot points
+ * are made one at a time, since the sheet can't add to a cell atomically and commands and ledger connections change
+ * plot points from several threads.
  */
 public class PPManager implements IPlotPointMethods{
 
-    //Sets the plot points of a player using Google's provided write method and the player's document ID
+    private final Supplier<PlayerDirectory> players;
+    private final Supplier<SheetSource> source;
+    //Player ID -> the lock held while changing their plot points
+    private final ConcurrentHashMap<String, Object> locks = new ConcurrentHashMap<>();
+
+    //Uses the players in users.yaml
+    public PPManager() {
+        this(() -> ConfigRegistry.get().getPlayers());
+    }
+
+    //Uses a campaign's players. The supplier is called every time so configuration changes are picked up.
+    public PPManager(Supplier<PlayerDirectory> players) {
+        this(players, CharacterCache::getSource);
+    }
+
+    //Reads and writes the players' sheets in source instead of wherever character sheets come from, e.g. in benchmarks
+    public PPManager(Supplier<PlayerDirectory> players, SheetSource source) {
+        this(players, () -> source);
+    }
+
+    private PPManager(Supplier<PlayerDirectory> players, Supplier<SheetSource> source) {
+        this.players = players;
+        this.source = source;
+    }
+
+    //Sets the plot points of a player in the plot point cell of their spreadsheet. Throws an IllegalStateException if
+    //it can't be written, e.g. while the circuit breaker is open, so the command that changed it can say so.
     @Override
     public int setPlotPoints(String target, int number) {
-        SheetsQuickstart.writePlotPoints(number, new UserInfo().getDocID(target));
-        return number;
+        synchronized (lock(target)) {
+            String sheetID = players.get().getSheetID(target);
+            try {
+                source.get().write(sheetID, SheetsQuickstart.PLOT_POINT_RANGE,
+                        Collections.singletonList(Collections.singletonList(number)));
+            } catch (IOException | GeneralSecurityException e) {
+                AuditLog.error("sheets", "Cannot update the plot point cell of " + sheetID, e);
+                throw new IllegalStateException("Google Sheets is unavailable, the plot points weren't saved", e);
+            }
+            return number;
+        }
+    }
+
+    //Reads and writes the cell under the player's lock, so adds from different threads can't overwrite each other
+    @Override
+    public int addPlotPoints(String target, int delta) {
+        synchronized (lock(target)) {
+            return setPlotPoints(target, getPlotPoints(target) + delta);
+        }
     }
 
-    //Grabs plot point values from SheetsQuickStart using a player's document ID
+    //Reads a player's plot points from their spreadsheet. An empty cell is 0.
     @Override
     public int getPlotPoints(String target) {
         try {
-            ValueRange range = SheetsQuickstart.getPlotPointCell(new UserInfo().getDocID(target));
-            List<List<Object>> values = range.getValues();
-            List<Object> valueList = values.get(0);
-            return Integer.parseInt(String.valueOf(valueList.get(0)));
+            List<List<Object>> values = source.get().read(players.get().getSheetID(target),
+                    SheetsQuickstart.PLOT_POINT_RANGE, SheetsScheduler.Priority.INTERACTIVE);
+            if (values.isEmpty() || values.get(0).isEmpty()) {
+                return 0;
+            }
+            return Integer.parseInt(String.valueOf(values.get(0).get(0)));
         } catch (IOException | GeneralSecurityException e) {
-            e.printStackTrace();
+            AuditLog.error("sheets", "Cannot read the plot points of " + target, e);
         }
         return 0;
     }
 
+    private Object lock(String target) {
+        return locks.computeIfAbsent(target, id -> new Object());
+    }
+
 }
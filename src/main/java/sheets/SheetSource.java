@@ -0,0 +1,24 @@
+package sheets;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.List;
+
+/**
+ * Somewhere spreadsheet values can be read from and written to. GoogleSheetSource uses Google Sheets and
+ * LocalSheetSource keeps spreadsheets in memory so the bot can run without a network.
+ */
+public interface SheetSource {
+
+    //Returns the rows in an A1 range such as "Data!A1:B270"
+    List<List<Object>> read(String spreadsheetId, String range, SheetsScheduler.Priority priority)
+            throws IOException, GeneralSecurityException;
+
+    //Returns the rows of several ranges of the same spreadsheet, in the same order as the ranges
+    List<List<List<Object>>> readAll(String spreadsheetId, List<String> ranges, SheetsScheduler.Priority priority)
+            throws IOException, GeneralSecurityException;
+
+    //Writes rows of values into an A1 range such as "B12:C12", starting at its top left cell
+    void write(String spreadsheetId, String range, List<List<Object>> values)
+            throws IOException, GeneralSecurityException;
+}
@@ -0,0 +1,110 @@
+package sheets;
+
+import audit.AuditLog;
+import config.Config;
+import config.ConfigRegistry;
+
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a campaign's cached character sheets up to date in the background without downloading every sheet every time.
+ * <p>
+ * If bot.properties sets sheets.checksum.row, each player's first column on the Data sheet is expected to hold a
+ * checksum formula in that row that changes whenever the player's columns change. The formula has to depend on the
+ * content of the cells, not just their lengths, since most edits change a value without changing its length (d6 to
+ * d8, 10 to 12). For example, this weights each cell's number, length and first and last characters by its position:
+ * <pre>
+ * =SUMPRODUCT(ROW(A1:B270)*COLUMN(A1:B270)*(IFERROR(VALUE(A1:B270),0)+LEN(A1:B270)
+ *     +IFERROR(UNICODE(A1:B270),0)+IFERROR(UNICODE(RIGHT(A1:B270)),0)))
+ * </pre>
+ * Each sync reads just those cells and only downloads the sheets whose checksum changed. Without a checksum row every cached sheet is read in a single batch request instead. Either way
+ * only the rows that changed are re-indexed. Syncs run every sheets.sync.seconds seconds (60 by default).
+ */
+public class SheetSync {
+
+    private static final int DEFAULT_INTERVAL = 60;
+
+    private final CharacterCache cache;
+    private final SheetSource source;
+    private final int checksumRow;
+    private final Map<String, Object> checksums = new ConcurrentHashMap<>();
+
+    public SheetSync(CharacterCache cache, SheetSource source, int checksumRow) {
+        this.cache = cache;
+        this.source = source;
+        this.checksumRow = checksumRow;
+    }
+
+    //Starts syncing a character cache on a background thread using the settings in bot.properties
+    public static void start(CharacterCache cache) {
+        Config config = ConfigRegistry.get();
+        int interval = config.getInt("sheets.sync.seconds", DEFAULT_INTERVAL);
+        SheetSync sync = new SheetSync(cache, CharacterCache.getSource(), config.getInt("sheets.checksum.row", 0));
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "sheet-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(() -> {
+            try {
+                sync.syncOnce();
+            } catch (IOException | GeneralSecurityException | RuntimeException e) {
+                AuditLog.error("sheets", "Cannot sync character sheets", e);
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Brings every cached character sheet up to date
+     *
+     * @return The number of sheets that were downloaded
+     */
+    public int syncOnce() throws IOException, GeneralSecurityException {
+        List<String> players = new ArrayList<>(cache.cachedIDs());
+        if (players.isEmpty()) {
+            return 0;
+        }
+        List<String> changed = checksumRow > 0 ? findChangedPlayers(players) : players;
+        if (changed.isEmpty()) {
+            return 0;
+        }
+        List<String> ranges = new ArrayList<>();
+        for (String id : changed) {
+            ranges.add(cache.getRange(id));
+        }
+        List<List<List<Object>>> sheets = source.readAll(cache.getSpreadsheetID(), ranges,
+                SheetsScheduler.Priority.BACKGROUND);
+        for (int i = 0; i < changed.size(); i++) {
+            cache.refresh(changed.get(i), sheets.get(i));
+        }
+        return changed.size();
+    }
+
+    //Reads every player's checksum cell in one request and returns the players whose checksum is different
+    private List<String> findChangedPlayers(List<String> players) throws IOException, GeneralSecurityException {
+        List<String> cells = new ArrayList<>();
+        for (String id : players) {
+            cells.add("Data!" + cache.getFirstColumn(id) + checksumRow);
+        }
+        List<List<List<Object>>> values = source.readAll(cache.getSpreadsheetID(), cells,
+                SheetsScheduler.Priority.BACKGROUND);
+        List<String> changed = new ArrayList<>();
+        for (int i = 0; i < players.size(); i++) {
+            Object checksum = values.get(i).isEmpty() || values.get(i).get(0).isEmpty() ? "" : values.get(i).get(0).get(0);
+            Object previous = checksums.put(players.get(i), checksum);
+            //The sheet may have changed between being cached and its first checksum being read
+            if (previous == null || !previous.equals(checksum)) {
+                changed.add(players.get(i));
+            }
+        }
+        return changed;
+    }
+}
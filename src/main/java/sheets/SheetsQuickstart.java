@@ -1,5 +1,6 @@
 package sheets;
 
+import audit.AuditLog;
 import com.google.api.client.auth.oauth2.Credential;
 import com.google.api.client.extensions.java6.auth.oauth2.AuthorizationCodeInstalledApp;
 import com.google.api.client.extensions.jetty.auth.oauth2.LocalServerReceiver;
@@ -12,21 +13,25 @@ import com.google.api.client.json.jackson2.JacksonFactory;
 import com.google.api.client.util.store.FileDataStoreFactory;
 import com.google.api.services.sheets.v4.Sheets;
 import com.google.api.services.sheets.v4.SheetsScopes;
-import com.google.api.services.sheets.v4.model.UpdateValuesResponse;
 import com.google.api.services.sheets.v4.model.ValueRange;
+import config.ConfigRegistry;
+import config.Player;
+import config.PlayerDirectory;
 
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.security.GeneralSecurityException;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 
 public class SheetsQuickstart {
-    private static final String RANGE = "B12:C12";
+    //The cell on a player's own spreadsheet that holds their plot points
+    static final String PLOT_POINT_RANGE = "B12:C12";
+    //The spreadsheet with every player's character data on its Data sheet
+    public static final String CHARACTER_SPREADSHEET_ID = "18McJSYbBDRr40ZHK7oG4gXqzORoz3B5nrJ0o9zF0F-8";
     private static final String APPLICATION_NAME = "Summary Stat Fetcher";
     private static final JsonFactory JSON_FACTORY = JacksonFactory.getDefaultInstance();
     private static final String TOKENS_DIRECTORY_PATH = "tokens";
@@ -36,20 +41,32 @@ public class SheetsQuickstart {
      */
     private static final List<String> SCOPES = Collections.singletonList(SheetsScopes.SPREADSHEETS);
     private static final String CREDENTIALS_FILE_PATH = "/credentials.json";
+    private static Sheets sheetsService;
     private ValueRange result;
 
     //Builds a new sheet object that contain information about the user's character
     public SheetsQuickstart (String id) throws IOException, GeneralSecurityException {
-        // Build a new authorized API client service.
-        final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-        final String spreadsheetId = "18McJSYbBDRr40ZHK7oG4gXqzORoz3B5nrJ0o9zF0F-8";
+        final Sheets service = getService();
+        final String spreadsheetId = CHARACTER_SPREADSHEET_ID;
         final String range = generateRangeCommand(id);
-        Sheets service = new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredentials(HTTP_TRANSPORT))
-                .setApplicationName(APPLICATION_NAME)
-                .build();
-        result = service.spreadsheets().values().get(spreadsheetId, range).execute();
+        result = SheetsScheduler.getInstance().execute(spreadsheetId + "!" + range, SheetsScheduler.Priority.INTERACTIVE,
+                () -> service.spreadsheets().values().get(spreadsheetId, range).execute());
         int numRows = result.getValues() != null ? result.getValues().size() : 0;
-        System.out.printf("%d rows retrieved.", numRows);
+        AuditLog.info("sheets", numRows + " rows retrieved");
+    }
+
+    /**
+     * Returns the authorized Sheets client, building it the first time it's needed. Building the client runs the
+     * OAuth flow, so it is only done once.
+     */
+    public static synchronized Sheets getService() throws IOException, GeneralSecurityException {
+        if (sheetsService == null) {
+            final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
+            sheetsService = new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredentials(HTTP_TRANSPORT))
+                    .setApplicationName(APPLICATION_NAME)
+                    .build();
+        }
+        return sheetsService;
     }
 
     /**
@@ -89,56 +106,29 @@ public class SheetsQuickstart {
                 .build();
         ValueRange result = service.spreadsheets().values().get(spreadsheetId, range).execute();
         int numRows = result.getValues() != null ? result.getValues().size() : 0;
-        System.out.printf("%d rows retrieved.", numRows);
-    }
-
-    public static ValueRange getPlotPointCell(String docID) throws IOException, GeneralSecurityException {
-        // Build a new authorized API client service.
-        final NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-        final String spreadsheetId = docID;
-        final String range = RANGE;
-        Sheets service = new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredentials(HTTP_TRANSPORT))
-                .setApplicationName(APPLICATION_NAME)
-                .build();
-        ValueRange response = service.spreadsheets().values()
-                .get(spreadsheetId, range)
-                .execute();
-        return response;
+        AuditLog.info("sheets", numRows + " rows retrieved");
     }
 
     public ValueRange getResult() {
         return result;
     }
 
-    private String generateRangeCommand(String id) throws IOException {
-        Properties prop = new Properties();
-        prop.load(new FileInputStream("src/main/resources/players.properties"));
-        String[] range = prop.getProperty(id).split(",");
-        return "Data!" + range[0] + "1:" + range[1] + "270";
+    static String generateRangeCommand(String id) throws IOException {
+        return getPlayer(id).getCharacterRange();
     }
 
-    //Writes a value to the plot point field of a spreadsheet
-    public static void writePlotPoints(int plotPoints, String docID) {
-        List<List<Object>> values = Arrays.asList(
-                Arrays.asList(plotPoints)
-        );
-        try {
-            NetHttpTransport HTTP_TRANSPORT = GoogleNetHttpTransport.newTrustedTransport();
-            Sheets service = new Sheets.Builder(HTTP_TRANSPORT, JSON_FACTORY, getCredentials(HTTP_TRANSPORT))
-                    .setApplicationName(APPLICATION_NAME)
-                    .build();
-
-            ValueRange body = new ValueRange().setValues(values);
-            UpdateValuesResponse result = service.spreadsheets().values().update(docID, RANGE, body)
-                    .setValueInputOption("RAW")
-                    .execute();
-            System.out.printf("%d cells updated.", result.getUpdatedCells());
+    //Returns a player who has character columns in players.properties
+    static Player getPlayer(String id) throws IOException {
+        return getPlayer(ConfigRegistry.get().getPlayers(), id);
+    }
 
-        } catch (GeneralSecurityException | IOException e) {
-            e.printStackTrace();
+    //Returns a player in a campaign who has character columns
+    static Player getPlayer(PlayerDirectory players, String id) throws IOException {
+        Player player = players.get(id);
+        if (player == null || player.getCharacterRange() == null) {
+            throw new IOException("No character columns in players.properties for " + id);
         }
+        return player;
     }
 
-
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,297 @@
+package sheets;
+
+import audit.AuditLog;
+import com.google.api.client.http.HttpResponseException;
+import config.ConfigRegistry;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Every request to Google Sheets goes through this scheduler so the bot stays inside the API quota.
+ * <p>
+ * Requests wait in a priority queue and are released by a token bucket that refills at sheets.quota requests per
+ * minute (from bot.properties, 60 by default). Interactive reads are released before plot point flushes, which are
+ * released before background work. Requests that fail with a 429, a 5xx or a network error are retried with
+ * exponential backoff and jitter. After several failures in a row the circuit breaker opens and requests are answered
+ * from the last value successfully read for the same key until the cooldown is over.
+ * <p>
+ * Reads of the same key at the same priority that are waiting or running at the same time share a single request, so
+ * a burst of players loading the same range costs one call against the quota.
+ */
+public class SheetsScheduler {
+
+    public enum Priority {INTERACTIVE, FLUSH, BACKGROUND}
+
+    //A call to the Sheets API
+    public interface SheetsCall<T> {
+        T call() throws IOException, GeneralSecurityException;
+    }
+
+    private static final int DEFAULT_QUOTA = 60;
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 500;
+    private static final long MAX_BACKOFF_MILLIS = 32000;
+    private static final int FAILURE_THRESHOLD = 5;
+    private static final long COOLDOWN_MILLIS = 30000;
+
+    private static SheetsScheduler instance;
+
+    private final PriorityBlockingQueue<Request<?>> queue = new PriorityBlockingQueue<>();
+    private final ExecutorService workers = Executors.newFixedThreadPool(4, daemon("sheets-worker"));
+    private final ScheduledExecutorService retryTimer = Executors.newSingleThreadScheduledExecutor(daemon("sheets-retry"));
+    private final ConcurrentHashMap<String, Object> lastGood = new ConcurrentHashMap<>();
+    //Reads in flight, by priority and key
+    private final SingleFlight<String, Object> reads = new SingleFlight<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    //Token bucket, only touched by the dispatcher thread
+    private final double tokensPerMilli;
+    private final double bucketSize;
+    private double tokens;
+    private long lastRefill = System.currentTimeMillis();
+
+    //Circuit breaker
+    private int consecutiveFailures;
+    private long openUntil;
+    private boolean trialInFlight;
+
+    SheetsScheduler(int requestsPerMinute) {
+        tokensPerMilli = requestsPerMinute / 60000.0;
+        bucketSize = Math.max(1, requestsPerMinute / 6);
+        tokens = bucketSize;
+        Thread dispatcher = new Thread(this::dispatch, "sheets-dispatcher");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    public static synchronized SheetsScheduler getInstance() {
+        if (instance == null) {
+            instance = new SheetsScheduler(readQuota());
+        }
+        return instance;
+    }
+
+    /**
+     * Runs a call through the scheduler and waits for the result.
+     *
+     * @param key      Identifies the data being read, used for the fallback cache. Writes pass null.
+     * @param priority Which queue the request waits in
+     * @param call     The request to the Sheets API
+     * @return The result of the call, or the last good result for the key if Sheets is unavailable
+     * @throws IOException If the call failed and there is nothing cached for the key
+     */
+    public <T> T execute(String key, Priority priority, SheetsCall<T> call) throws IOException, GeneralSecurityException {
+        try {
+            return submit(key, priority, call).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Sheets");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof GeneralSecurityException) {
+                throw (GeneralSecurityException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    //Queues a call without waiting for it to finish. A read of a key that is already queued or running shares its result.
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Priority priority, SheetsCall<T> call) {
+        if (key == null) {
+            return enqueue(null, priority, call);
+        }
+        return (CompletableFuture<T>) reads.submit(priority + " " + key,
+                () -> (CompletableFuture<Object>) enqueue(key, priority, call));
+    }
+
+    private <T> CompletableFuture<T> enqueue(String key, Priority priority, SheetsCall<T> call) {
+        Request<T> request = new Request<>(key, priority, call, sequence.getAndIncrement());
+        if (isOpen()) {
+            fallback(request, new IOException("Sheets circuit breaker is open"));
+        } else {
+            queue.add(request);
+        }
+        return request.future;
+    }
+
+    //Records a value that is known to be current, such as one that was just written. Reads already in flight for the
+    //key may have started before the write, so later reads don't share them.
+    public void remember(String key, Object value) {
+        lastGood.put(key, value);
+        for (Priority priority : Priority.values()) {
+            reads.forget(priority + " " + key);
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            try {
+                Request<?> request = queue.take();
+                if (!allowRequest()) {
+                    fallback(request, new IOException("Sheets circuit breaker is open"));
+                    continue;
+                }
+                acquireToken();
+                workers.execute(() -> run(request));
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    //Blocks until the bucket has a token to spend
+    private void acquireToken() throws InterruptedException {
+        while (true) {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(bucketSize, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+            if (tokens >= 1) {
+                tokens--;
+                return;
+            }
+            Thread.sleep((long) Math.ceil((1 - tokens) / tokensPerMilli));
+        }
+    }
+
+    private <T> void run(Request<T> request) {
+        try {
+            T result = request.call.call();
+            recordSuccess();
+            if (request.key != null && result != null) {
+                lastGood.put(request.key, result);
+            }
+            request.future.complete(result);
+        } catch (Exception e) {
+            boolean retryable = isRetryable(e);
+            if (retryable) {
+                recordFailure();
+            } else {
+                releaseTrial();
+            }
+            if (retryable && request.attempt + 1 < MAX_ATTEMPTS && !isOpen()) {
+                request.attempt++;
+                retryTimer.schedule(() -> queue.add(request), backoff(request.attempt), TimeUnit.MILLISECONDS);
+            } else {
+                fallback(request, e);
+            }
+        }
+    }
+
+    //Answers a request from the cache, or fails it if nothing has been read for its key yet
+    @SuppressWarnings("unchecked")
+    private <T> void fallback(Request<T> request, Exception e) {
+        Object cached = request.key != null ? lastGood.get(request.key) : null;
+        if (cached != null) {
+            AuditLog.info("sheets", "Sheets unavailable, using cached value for " + request.key);
+            request.future.complete((T) cached);
+        } else {
+            request.future.completeExceptionally(e);
+        }
+    }
+
+    //Full jitter: a random delay between 0 and the exponential backoff for this attempt
+    private static long backoff(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << attempt);
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    //Quota errors, server errors and network errors are worth retrying. Anything else will fail again.
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof HttpResponseException) {
+            int status = ((HttpResponseException) e).getStatusCode();
+            return status == 429 || status >= 500;
+        }
+        return e instanceof IOException;
+    }
+
+    private synchronized boolean isOpen() {
+        return System.currentTimeMillis() < openUntil;
+    }
+
+    //Once the cooldown is over a single trial request is let through to see if Sheets has recovered
+    private synchronized boolean allowRequest() {
+        if (consecutiveFailures < FAILURE_THRESHOLD) {
+            return true;
+        }
+        if (System.currentTimeMillis() < openUntil || trialInFlight) {
+            return false;
+        }
+        trialInFlight = true;
+        return true;
+    }
+
+    private synchronized void recordSuccess() {
+        consecutiveFailures = 0;
+        trialInFlight = false;
+    }
+
+    private synchronized void recordFailure() {
+        consecutiveFailures++;
+        trialInFlight = false;
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            openUntil = System.currentTimeMillis() + COOLDOWN_MILLIS;
+            AuditLog.info("sheets", "Sheets circuit breaker opened after " + consecutiveFailures + " failures");
+        }
+    }
+
+    private synchronized void releaseTrial() {
+        trialInFlight = false;
+    }
+
+    private static int readQuota() {
+        try {
+            return ConfigRegistry.get().getInt("sheets.quota", DEFAULT_QUOTA);
+        } catch (NumberFormatException e) {
+            AuditLog.error("sheets", "Invalid sheets.quota, using " + DEFAULT_QUOTA, e);
+        }
+        return DEFAULT_QUOTA;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class Request<T> implements Comparable<Request<?>> {
+        private final String key;
+        private final Priority priority;
+        private final SheetsCall<T> call;
+        private final long sequence;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private int attempt;
+
+        private Request(String key, Priority priority, SheetsCall<T> call, long sequence) {
+            this.key = key;
+            this.priority = priority;
+            this.call = call;
+            this.sequence = sequence;
+        }
+
+        //Higher priorities first, then first come first served
+        @Override
+        public int compareTo(Request<?> other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+}
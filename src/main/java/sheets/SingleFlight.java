@@ -0,0 +1,103 @@
+package sheets;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Makes identical requests that arrive at the same time share one piece of work. The first request for a key starts
+ * the work, and every request for the key made before it finishes gets the same future instead of starting its own.
+ * Once the work is done the key is forgotten, so the next request starts afresh.
+ */
+public class SingleFlight<K, V> {
+
+    //How often a thread waiting for someone else's work checks whether it should stop waiting
+    private static final long POLL_MILLIS = 50;
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    //Returns the future for the key's work in flight, or the one start returns if nothing is in flight
+    public CompletableFuture<V> submit(K key, Supplier<CompletableFuture<V>> start) {
+        CompletableFuture<V> existing = inFlight.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<V> claim = new CompletableFuture<>();
+        existing = inFlight.putIfAbsent(key, claim);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            start.get().whenComplete((value, e) -> {
+                if (e != null) {
+                    claim.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                            ? e.getCause() : e);
+                } else {
+                    claim.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            claim.completeExceptionally(e);
+        }
+        claim.whenComplete((value, e) -> inFlight.remove(key, claim));
+        return claim;
+    }
+
+    //Runs the work on this thread unless another thread is already doing it, in which case waits for its result
+    public V run(K key, Supplier<V> work) {
+        return run(key, work, () -> false);
+    }
+
+    /**
+     * Runs the work on this thread unless another thread is already doing it, in which case waits for its result
+     *
+     * @param stopped Checked while waiting for another thread's work. Once it returns true the wait gives up by throwing
+     *                a CancellationException, leaving the other thread's work running.
+     */
+    public V run(K key, Supplier<V> work, BooleanSupplier stopped) {
+        CompletableFuture<V> claim = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, claim);
+        if (existing != null) {
+            return await(existing, stopped);
+        }
+        try {
+            V value = work.get();
+            claim.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            claim.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, claim);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> future, BooleanSupplier stopped) {
+        while (true) {
+            if (stopped.getAsBoolean()) {
+                throw new CancellationException("Stopped waiting");
+            }
+            try {
+                return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                //Still running, check again
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting");
+            }
+        }
+    }
+
+    //Stops sharing the key's work in flight, e.g. because what it reads has just changed
+    public void forget(K key) {
+        inFlight.remove(key);
+    }
+}
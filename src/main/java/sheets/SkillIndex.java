@@ -0,0 +1,205 @@
+package sheets;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Finds the skill a player meant when what they typed isn't exactly a skill's name. Built from a sheet's skills each
+ * time it's cached or updated, so matching never goes back to Google Sheets.
+ * <p>
+ * A prefix trie resolves names cut short (athletic -> athletics) as long as only one skill starts that way, and the
+ * initials of multi-word names resolve abbreviations (ed -> Euphemanu Dance). Anything else is looked up in a BK-tree
+ * by edit distance to suggest the closest names. A BK-tree only compares the name with the skills whose distance from
+ * it could be small enough, so a typo is matched without measuring it against every skill.
+ */
+final class SkillIndex {
+
+    //Shorter prefixes are too likely to be something other than a skill
+    private static final int MIN_PREFIX = 3;
+    private static final int MAX_SUGGESTIONS = 3;
+    private static final String AMBIGUOUS = "";
+
+    //Normalized name -> the name as it's written on the sheet
+    private final Map<String, String> names;
+    private final TrieNode trie = new TrieNode();
+    //Initials of multi-word names -> the normalized name, or AMBIGUOUS if several names share them
+    private final Map<String, String> abbreviations = new HashMap<>();
+    private BkNode bkTree;
+
+    /**
+     * @param names Each skill's normalized name and its name as written on the sheet
+     */
+    SkillIndex(Map<String, String> names) {
+        this.names = names;
+        for (Map.Entry<String, String> name : names.entrySet()) {
+            addToTrie(name.getKey());
+            addToBkTree(name.getKey());
+            String initials = initials(name.getValue());
+            if (initials.length() > 1) {
+                abbreviations.merge(initials, name.getKey(), (first, second) -> AMBIGUOUS);
+            }
+        }
+    }
+
+    /**
+     * Resolves a normalized name that isn't exactly a skill
+     *
+     * @return The normalized name of the only skill it could mean, or null if there isn't exactly one
+     */
+    String resolve(String name) {
+        String abbreviation = abbreviations.get(name);
+        if (abbreviation != null && !abbreviation.equals(AMBIGUOUS)) {
+            return abbreviation;
+        }
+        if (name.length() < MIN_PREFIX) {
+            return null;
+        }
+        TrieNode node = find(name);
+        return node != null && node.count == 1 ? node.only : null;
+    }
+
+    //The skills a normalized name that couldn't be resolved most likely meant, as written on the sheet, best first
+    List<String> suggest(String name) {
+        //Sorted by distance, then name
+        TreeMap<String, String> matches = new TreeMap<>();
+        TrieNode node = find(name);
+        if (node != null && name.length() > 1) {
+            collect(node, new StringBuilder(name), matches, 0);
+        }
+        if (bkTree != null) {
+            search(bkTree, name, maxDistance(name), matches);
+        }
+        List<String> suggestions = new ArrayList<>();
+        for (String match : matches.values()) {
+            if (!suggestions.contains(match) && suggestions.size() < MAX_SUGGESTIONS) {
+                suggestions.add(match);
+            }
+        }
+        return suggestions;
+    }
+
+    private void addToTrie(String name) {
+        TrieNode node = trie;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.children.computeIfAbsent(name.charAt(i), c -> new TrieNode());
+            node.count++;
+            node.only = name;
+        }
+        node.complete = true;
+    }
+
+    private TrieNode find(String prefix) {
+        TrieNode node = trie;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    //Adds the first few names under a trie node in alphabetical order, ranked alongside names one edit away
+    private int collect(TrieNode node, StringBuilder name, TreeMap<String, String> matches, int found) {
+        if (node.complete) {
+            matches.put(key(1, name.toString()), names.get(name.toString()));
+            found++;
+        }
+        for (Map.Entry<Character, TrieNode> child : node.children.entrySet()) {
+            if (found >= MAX_SUGGESTIONS) {
+                break;
+            }
+            name.append(child.getKey());
+            found = collect(child.getValue(), name, matches, found);
+            name.setLength(name.length() - 1);
+        }
+        return found;
+    }
+
+    private void addToBkTree(String name) {
+        if (bkTree == null) {
+            bkTree = new BkNode(name);
+            return;
+        }
+        BkNode node = bkTree;
+        while (true) {
+            int distance = distance(name, node.name);
+            BkNode child = node.children.get(distance);
+            if (child == null) {
+                node.children.put(distance, new BkNode(name));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    //Adds every name within maxDistance of name. Only children whose distance could be in range are visited.
+    private void search(BkNode node, String name, int maxDistance, TreeMap<String, String> matches) {
+        int distance = distance(name, node.name);
+        if (distance <= maxDistance) {
+            matches.put(key(distance, node.name), names.get(node.name));
+        }
+        for (Map.Entry<Integer, BkNode> child : node.children.entrySet()) {
+            if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                search(child.getValue(), name, maxDistance, matches);
+            }
+        }
+    }
+
+    //How far off a name can be and still be suggested. Two edits covers swapping two letters.
+    private static int maxDistance(String name) {
+        return name.length() < 3 ? 1 : Math.max(2, Math.min(3, name.length() / 3));
+    }
+
+    private static String key(int distance, String name) {
+        return distance + " " + name;
+    }
+
+    //Levenshtein distance: how many letters have to be inserted, deleted or changed to turn a into b
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    //The first letter of each word of a name as written on the sheet (Euphemanu Dance -> ed)
+    private static String initials(String name) {
+        StringBuilder initials = new StringBuilder();
+        for (String word : name.trim().split("\\s+")) {
+            if (!word.isEmpty()) {
+                initials.append(Character.toLowerCase(word.charAt(0)));
+            }
+        }
+        return initials.toString();
+    }
+
+    private static class TrieNode {
+        private final Map<Character, TrieNode> children = new TreeMap<>();
+        //How many names pass through this node, and the last one added, which is the only one when count is 1
+        private int count;
+        private String only;
+        private boolean complete;
+    }
+
+    private static class BkNode {
+        private final String name;
+        private final Map<Integer, BkNode> children = new HashMap<>();
+
+        private BkNode(String name) {
+            this.name = name;
+        }
+    }
+}
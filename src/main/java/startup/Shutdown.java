@@ -0,0 +1,77 @@
+package startup;
+
+import audit.AuditLog;
+import campaign.Campaign;
+import campaign.CampaignRegistry;
+import config.ConfigRegistry;
+import ledger.LedgerClient;
+import ledger.LedgerServer;
+import transport.TransportRegistry;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shuts the bot down without losing anything, in order: stop taking commands, let every campaign finish the commands
+ * it has queued, write out pending doom, history and plot point changes, save the warm-state snapshot, send the
+ * replies still on their way to Discord and exit. Draining, stopping the ledger, writing out changes and sending replies
+ * share shutdown.timeout seconds (30 by default); anything still running at the deadline is abandoned so the bot can't
+ * hang on the way out. Saving the snapshot is a local file write and isn't given a deadline.
+ */
+public class Shutdown {
+
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static volatile boolean stopping;
+
+    private Shutdown() {
+    }
+
+    //Starts shutting down on a thread of its own, since the caller is usually one of the threads being drained
+    public static synchronized void begin() {
+        if (stopping) {
+            return;
+        }
+        stopping = true;
+        Thread shutdown = new Thread(Shutdown::run, "shutdown");
+        shutdown.start();
+    }
+
+    //Whether the bot has stopped taking commands
+    public static boolean isStopping() {
+        return stopping;
+    }
+
+    private static void run() {
+        String timeout = ConfigRegistry.get().get("shutdown.timeout");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(
+                timeout != null ? Integer.parseInt(timeout.trim()) : DEFAULT_TIMEOUT_SECONDS);
+        List<Campaign> campaigns = CampaignRegistry.getAll();
+        try {
+            for (Campaign campaign : campaigns) {
+                if (!campaign.drain(deadline)) {
+                    AuditLog.info("shutdown", "Gave up waiting for commands in " + campaign.getName());
+                }
+            }
+            //Other nodes can't change this node's state once the ledger is down
+            LedgerServer.shutdown(deadline);
+            for (Campaign campaign : campaigns) {
+                if (!campaign.flush(deadline)) {
+                    AuditLog.info("shutdown", "Couldn't write out all the changes in " + campaign.getName());
+                }
+            }
+            LedgerClient ledger = LedgerClient.getInstance();
+            if (ledger != null) {
+                ledger.close();
+            }
+            Startup.saveSnapshot();
+            TransportRegistry.get().disconnect(
+                    Math.max(0, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            AuditLog.error("shutdown", "Cannot shut down cleanly", e);
+        }
+        System.exit(0);
+    }
+}
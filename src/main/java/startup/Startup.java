@@ -0,0 +1,122 @@
+package startup;
+
+import audit.AuditLog;
+import campaign.Campaign;
+import config.ConfigRegistry;
+import sheets.CharacterCache;
+import transport.Transport;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Gets the bot from a restart to fast commands in as little time as possible. The warm-state snapshot is read and the
+ * Sheets client is authorized in the background while the configuration loads and the bot logs in. Once logged in
+ * the snapshot is restored and fresh copies of every sheet are loaded. Commands wait until every player has a sheet,
+ * restored or fresh, so nobody's first roll pays for a download. If that takes longer than startup.timeout seconds
+ * (30 by default) commands are let through anyway.
+ * <p>
+ * The snapshot is saved every snapshot.interval minutes (5 by default) and when the bot shuts down.
+ */
+public class Startup {
+
+    private static final Path SNAPSHOT = Paths.get(ConfigRegistry.RESOURCES, "warm.snapshot");
+    private static final int DEFAULT_TIMEOUT_SECONDS = 30;
+    private static final int DEFAULT_SNAPSHOT_MINUTES = 5;
+
+    private static final CompletableFuture<Void> ready = new CompletableFuture<>();
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "startup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile CompletableFuture<WarmSnapshot> snapshot = CompletableFuture.completedFuture(null);
+    private static volatile Runnable saver = () -> {
+    };
+
+    private Startup() {
+    }
+
+    //Starts reading the snapshot and authorizing the Sheets client. Call before loading the configuration.
+    public static void begin() {
+        snapshot = CompletableFuture.supplyAsync(() -> WarmSnapshot.read(SNAPSHOT), timer);
+        CharacterCache.connect();
+    }
+
+    /**
+     * Restores the snapshot, loads fresh copies of every campaign's sheets and starts saving the snapshot. Commands
+     * are let through once every player has a sheet.
+     */
+    public static void warm(List<Campaign> campaigns, Transport transport) {
+        long start = System.nanoTime();
+        WarmSnapshot restored = snapshot.join();
+        if (restored != null) {
+            restored.restoreStatistics();
+            restored.restoreUsers(transport);
+        }
+        List<CompletableFuture<Void>> waitingFor = new ArrayList<>();
+        Set<String> players = new HashSet<>();
+        for (Campaign campaign : campaigns) {
+            List<String> ids = campaign.getPlayers().getDiscordIDs();
+            players.addAll(ids);
+            Set<String> restoredIDs = restored != null ? restored.restoreSheets(campaign) : Collections.emptySet();
+            CompletableFuture<Void> loaded = campaign.getCharacters().warmAll(ids);
+            //Players with a restored sheet can roll with it while the fresh copy loads
+            if (!restoredIDs.containsAll(ids)) {
+                waitingFor.add(loaded);
+            }
+        }
+        CompletableFuture.allOf(waitingFor.toArray(new CompletableFuture[0])).thenRun(() -> {
+            if (ready.complete(null)) {
+                AuditLog.info("startup", "Ready in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+            }
+        });
+        timer.schedule(() -> {
+            if (ready.complete(null)) {
+                AuditLog.info("startup", "Still loading character sheets, accepting commands anyway");
+            }
+        }, getSetting("startup.timeout", DEFAULT_TIMEOUT_SECONDS), TimeUnit.SECONDS);
+
+        saver = () -> save(campaigns, transport, players);
+        int interval = getSetting("snapshot.interval", DEFAULT_SNAPSHOT_MINUTES);
+        timer.scheduleWithFixedDelay(saver, interval, interval, TimeUnit.MINUTES);
+        Runtime.getRuntime().addShutdownHook(new Thread(saver, "snapshot-save"));
+    }
+
+    //Saves the snapshot now. Does nothing if the bot hasn't warmed up yet, since there's nothing worth saving.
+    public static void saveSnapshot() {
+        saver.run();
+    }
+
+    //Blocks until the bot is warm enough to run commands
+    public static void awaitReady() {
+        ready.join();
+    }
+
+    public static boolean isReady() {
+        return ready.isDone();
+    }
+
+    private static void save(List<Campaign> campaigns, Transport transport, Set<String> players) {
+        try {
+            WarmSnapshot.save(SNAPSHOT, campaigns, transport, players);
+        } catch (IOException | RuntimeException e) {
+            AuditLog.error("startup", "Cannot save the warm snapshot", e);
+        }
+    }
+
+    private static int getSetting(String key, int defaultValue) {
+        String value = ConfigRegistry.get().get(key);
+        return value != null ? Integer.parseInt(value.trim()) : defaultValue;
+    }
+}
@@ -0,0 +1,213 @@
+package startup;
+
+import audit.AuditLog;
+import campaign.Campaign;
+import logic.StatisticsCache;
+import sheets.CharacterCache;
+import transport.Author;
+import transport.KnownUser;
+import transport.Transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The caches a restarted bot would otherwise have to fill again before it's fast: every campaign's character sheets,
+ * the statistics of recently used dice pools, and the names and avatars of the players.
+ * <p>
+ * Sheets are saved with the spreadsheet they came from and are only restored if the campaign still uses it. A
+ * restored sheet is only a stand-in, since the bot loads a fresh copy of every sheet on startup anyway.
+ */
+public class WarmSnapshot {
+
+    private static final int MAGIC = 0x5741524d;
+    private static final int VERSION = 1;
+
+    //Campaign -> its spreadsheet and the rows of each player's sheet
+    private final Map<String, String> spreadsheets = new HashMap<>();
+    private final Map<String, Map<String, List<List<Object>>>> sheets = new HashMap<>();
+    private final Map<String, StatisticsCache.Distribution> distributions = new HashMap<>();
+    private final List<Author> users = new ArrayList<>();
+
+    private WarmSnapshot() {
+    }
+
+    //Reads the snapshot at path, or returns null if there isn't one or it can't be read
+    public static WarmSnapshot read(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        WarmSnapshot snapshot = new WarmSnapshot();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int campaigns = in.readInt();
+            for (int c = 0; c < campaigns; c++) {
+                String name = in.readUTF();
+                snapshot.spreadsheets.put(name, in.readUTF());
+                Map<String, List<List<Object>>> players = new HashMap<>();
+                int playerCount = in.readInt();
+                for (int p = 0; p < playerCount; p++) {
+                    String id = in.readUTF();
+                    players.put(id, readRows(in));
+                }
+                snapshot.sheets.put(name, players);
+            }
+            int pools = in.readInt();
+            for (int i = 0; i < pools; i++) {
+                String key = in.readUTF();
+                snapshot.distributions.put(key, new StatisticsCache.Distribution(readPercentages(in),
+                        readPercentages(in)));
+            }
+            int userCount = in.readInt();
+            for (int i = 0; i < userCount; i++) {
+                String id = in.readUTF();
+                String name = in.readUTF();
+                String avatar = in.readBoolean() ? in.readUTF() : null;
+                snapshot.users.add(new KnownUser(id, name, avatar));
+            }
+            return snapshot;
+        } catch (IOException e) {
+            AuditLog.error("startup", "Cannot read the warm snapshot", e);
+            return null;
+        }
+    }
+
+    /**
+     * Saves the campaigns' caches, the statistics cache and the users the transport knows to path
+     *
+     * @param players The users to save the names and avatars of
+     */
+    public static void save(Path path, Collection<Campaign> campaigns, Transport transport, Collection<String> players)
+            throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = Paths.get(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(campaigns.size());
+            for (Campaign campaign : campaigns) {
+                CharacterCache characters = campaign.getCharacters();
+                Map<String, List<List<Object>>> cached = characters.getAll();
+                out.writeUTF(campaign.getName());
+                out.writeUTF(characters.getSpreadsheetID());
+                out.writeInt(cached.size());
+                for (Map.Entry<String, List<List<Object>>> player : cached.entrySet()) {
+                    out.writeUTF(player.getKey());
+                    writeRows(out, player.getValue());
+                }
+            }
+            Map<String, StatisticsCache.Distribution> cachedPools = StatisticsCache.getAll();
+            out.writeInt(cachedPools.size());
+            for (Map.Entry<String, StatisticsCache.Distribution> pool : cachedPools.entrySet()) {
+                out.writeUTF(pool.getKey());
+                writePercentages(out, pool.getValue().getTotals());
+                writePercentages(out, pool.getValue().getDoom());
+            }
+            List<Author> known = new ArrayList<>();
+            for (String id : new HashSet<>(players)) {
+                transport.getUser(id).ifPresent(known::add);
+            }
+            out.writeInt(known.size());
+            for (Author user : known) {
+                out.writeUTF(user.getIdAsString());
+                out.writeUTF(user.getDisplayName());
+                out.writeBoolean(user.getAvatarUrl() != null);
+                if (user.getAvatarUrl() != null) {
+                    out.writeUTF(user.getAvatarUrl());
+                }
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Puts a campaign's saved character sheets in its cache, unless the campaign has moved to another spreadsheet
+     *
+     * @return The players whose sheets were restored
+     */
+    public Set<String> restoreSheets(Campaign campaign) {
+        Map<String, List<List<Object>>> players = sheets.get(campaign.getName());
+        CharacterCache characters = campaign.getCharacters();
+        if (players == null || !characters.getSpreadsheetID().equals(spreadsheets.get(campaign.getName()))) {
+            return Collections.emptySet();
+        }
+        for (Map.Entry<String, List<List<Object>>> player : players.entrySet()) {
+            characters.restore(player.getKey(), player.getValue());
+        }
+        return players.keySet();
+    }
+
+    public void restoreStatistics() {
+        for (Map.Entry<String, StatisticsCache.Distribution> pool : distributions.entrySet()) {
+            StatisticsCache.put(pool.getKey(), pool.getValue());
+        }
+    }
+
+    public void restoreUsers(Transport transport) {
+        for (Author user : users) {
+            transport.remember(user);
+        }
+    }
+
+    //Every cell is saved as text, which is how the Sheets API returns them
+    private static void writeRows(DataOutputStream out, List<List<Object>> rows) throws IOException {
+        out.writeInt(rows.size());
+        for (List<Object> row : rows) {
+            out.writeInt(row.size());
+            for (Object cell : row) {
+                out.writeUTF(String.valueOf(cell));
+            }
+        }
+    }
+
+    private static List<List<Object>> readRows(DataInputStream in) throws IOException {
+        int rowCount = in.readInt();
+        List<List<Object>> rows = new ArrayList<>(rowCount);
+        for (int r = 0; r < rowCount; r++) {
+            int cells = in.readInt();
+            List<Object> row = new ArrayList<>(cells);
+            for (int c = 0; c < cells; c++) {
+                row.add(in.readUTF());
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static void writePercentages(DataOutputStream out, Map<Integer, Double> percentages) throws IOException {
+        out.writeInt(percentages.size());
+        for (Map.Entry<Integer, Double> outcome : percentages.entrySet()) {
+            out.writeInt(outcome.getKey());
+            out.writeDouble(outcome.getValue());
+        }
+    }
+
+    private static HashMap<Integer, Double> readPercentages(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        HashMap<Integer, Double> percentages = new HashMap<>();
+        for (int i = 0; i < count; i++) {
+            percentages.put(in.readInt(), in.readDouble());
+        }
+        return percentages;
+    }
+}
@@ -0,0 +1,203 @@
+package storage;
+
+import audit.AuditLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An append-only journal of doom values. Each record is 12 bytes: the version of the doom pool, its value at that
+ * version and a checksum of the two so a record torn by a crash is ignored when the journal is read back.
+ * <p>
+ * Records are written by a single background thread that writes everything queued since its last write in one go and
+ * then fsyncs, so callers never wait on the disk. Once the journal holds more than COMPACT_AFTER records it is
+ * replaced by a journal holding only the latest record.
+ */
+class DoomJournal {
+
+    private static final int RECORD_SIZE = 12;
+    private static final int CHECKSUM_SEED = 0x44304f4d;
+    private static final int COMPACT_AFTER = 1000;
+    private static final int FLUSH_TIMEOUT_SECONDS = 5;
+
+    private final Path path;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private FileChannel channel;
+    private int records;
+    private long[] latest;
+    //Set while the newest records couldn't be written. Only the newest value is recovered, so the next record that is
+    //written makes up for them.
+    private volatile boolean behind;
+
+    DoomJournal(String path) throws IOException {
+        this.path = Paths.get(path);
+        latest = recover(this.path);
+        channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        records = (int) (channel.size() / RECORD_SIZE);
+        //Anything after the last whole record was torn by a crash
+        channel.truncate((long) records * RECORD_SIZE);
+        channel.position((long) records * RECORD_SIZE);
+        writer = new Thread(this::write, "doom-journal");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //Returns {version, value} of the newest record, or null if the journal was empty
+    long[] getLatest() {
+        return latest;
+    }
+
+    //Queues a record to be written. Returns immediately.
+    void append(int version, int value) {
+        queue.add(new long[]{version, value});
+    }
+
+    //Waits until everything appended so far is on disk
+    void flush() throws InterruptedException {
+        flush(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    //Waits up to timeout for everything appended so far to be on disk. Returns false if it didn't get there in time or
+    //the newest change couldn't be written.
+    boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Boolean> written = new CompletableFuture<>();
+        queue.add(written);
+        try {
+            return written.get(timeout, unit);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    void close() throws InterruptedException, IOException {
+        flush();
+        writer.interrupt();
+        writer.join(1000);
+        channel.close();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write() {
+        List<Object> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch);
+            List<CompletableFuture<Boolean>> waiting = new ArrayList<>();
+            int appended = 0;
+            ByteBuffer buffer = ByteBuffer.allocate(batch.size() * RECORD_SIZE);
+            for (Object item : batch) {
+                if (item instanceof CompletableFuture) {
+                    waiting.add((CompletableFuture<Boolean>) item);
+                } else {
+                    long[] record = (long[]) item;
+                    putRecord(buffer, (int) record[0], (int) record[1]);
+                    //Racing writers can queue a newer version ahead of an older one, so keep the highest
+                    if (latest == null || record[0] > latest[0]) {
+                        latest = record;
+                    }
+                    records++;
+                    appended++;
+                }
+            }
+            batch.clear();
+            buffer.flip();
+            if (appended > 0) {
+                behind = !append(buffer, appended);
+            }
+            if (!behind && records > COMPACT_AFTER) {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    AuditLog.error("storage", "Cannot compact the doom journal " + path, e);
+                }
+            }
+            for (CompletableFuture<Boolean> waiter : waiting) {
+                waiter.complete(!behind);
+            }
+        }
+    }
+
+    //Writes and fsyncs a batch of records. If that fails the batch is taken back out, so the records written after it
+    //still line up and can be read back.
+    private boolean append(ByteBuffer buffer, int count) {
+        long start = -1;
+        try {
+            start = channel.position();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            return true;
+        } catch (IOException e) {
+            AuditLog.error("storage", "Cannot write to the doom journal " + path, e);
+            records -= count;
+            try {
+                if (start >= 0) {
+                    channel.truncate(start);
+                    channel.position(start);
+                }
+            } catch (IOException ignored) {
+                //The torn record fails its checksum when the journal is read back
+            }
+            return false;
+        }
+    }
+
+    //Writes the newest record to a new journal and swaps it in place of the old one
+    private void compact() throws IOException {
+        Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+            putRecord(buffer, (int) latest[0], (int) latest[1]);
+            buffer.flip();
+            out.write(buffer);
+            out.force(true);
+        }
+        channel.close();
+        Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        channel.position(RECORD_SIZE);
+        records = 1;
+    }
+
+    private static void putRecord(ByteBuffer buffer, int version, int value) {
+        buffer.putInt(version).putInt(value).putInt(version ^ value ^ CHECKSUM_SEED);
+    }
+
+    //Reads every valid record and returns the one with the highest version
+    private static long[] recover(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        long[] newest = null;
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int version = buffer.getInt();
+            int value = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (checksum == (version ^ value ^ CHECKSUM_SEED) && (newest == null || version > newest[0])) {
+                newest = new long[]{version, value};
+            }
+        }
+        return newest;
+    }
+}
@@ -0,0 +1,99 @@
+package storage;
+
+import audit.AuditLog;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A campaign's doom pool, kept in memory and made durable by a DoomJournal.
+ * <p>
+ * The pool's value and a version number are packed into one AtomicLong so every change is a single compare and set.
+ * The version is journaled with the value, so the newest value wins on recovery no matter what order concurrent
+ * changes reach the journal in. When there is no journal yet the pool starts from the campaign's initial doom.
+ */
+public class DoomPool implements DoomStore {
+
+    private final AtomicLong state;
+    private final DoomJournal journal;
+
+    DoomPool(DoomJournal journal, int initialDoom) {
+        this.journal = journal;
+        long[] latest = journal.getLatest();
+        if (latest != null) {
+            state = new AtomicLong(pack((int) latest[0], (int) latest[1]));
+        } else {
+            state = new AtomicLong(pack(0, initialDoom));
+            journal.append(0, initialDoom);
+        }
+    }
+
+    //Opens the doom pool journaled at path, starting from initialDoom if the journal doesn't exist yet
+    public static DoomPool open(String path, int initialDoom) throws IOException {
+        DoomPool pool = new DoomPool(new DoomJournal(path), initialDoom);
+        Runtime.getRuntime().addShutdownHook(new Thread(pool::close, "doom-journal-close"));
+        return pool;
+    }
+
+    @Override
+    public int get() {
+        return value(state.get());
+    }
+
+    @Override
+    public int add(int delta) {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            next = pack(version(current) + 1, value(current) + delta);
+        } while (!state.compareAndSet(current, next));
+        journal.append(version(next), value(next));
+        return value(next);
+    }
+
+    @Override
+    public int set(int doom) {
+        long current;
+        long next;
+        do {
+            current = state.get();
+            next = pack(version(current) + 1, doom);
+        } while (!state.compareAndSet(current, next));
+        journal.append(version(next), doom);
+        return value(current);
+    }
+
+    //Waits for every change so far to be written to the journal
+    public void flush() throws InterruptedException {
+        journal.flush();
+    }
+
+    //Waits up to timeout for every change so far to be journaled. Returns false if it didn't get there in time or the
+    //journal couldn't be written.
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        return journal.flush(timeout, unit);
+    }
+
+    //Writes out the changes so far and stops the journal's thread and closes its file
+    void close() {
+        try {
+            journal.close();
+        } catch (InterruptedException | IOException e) {
+            AuditLog.error("storage", "Cannot close the doom journal", e);
+        }
+    }
+
+    private static long pack(int version, int value) {
+        return ((long) version << 32) | (value & 0xffffffffL);
+    }
+
+    private static int version(long packed) {
+        return (int) (packed >>> 32);
+    }
+
+    private static int value(long packed) {
+        return (int) packed;
+    }
+}
@@ -0,0 +1,15 @@
+package storage;
+
+/**
+ * Where a campaign's doom pool lives: a local DoomPool, or the ledger when several processes share one pool
+ */
+public interface DoomStore {
+
+    int get();
+
+    //Adds to the doom pool and returns the new value
+    int add(int delta);
+
+    //Sets the doom pool and returns what it was before
+    int set(int doom);
+}
@@ -0,0 +1,333 @@
+package storage;
+
+import audit.AuditLog;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An append-only binary log of every change to a campaign's doom and plot points.
+ * <p>
+ * Events are queued and written by a background thread so recording one never blocks a command. Alongside the log an
+ * index of record numbers is kept for the doom pool and for each player, so a history query reads only the records
+ * it returns instead of the whole log. Every SNAPSHOT_EVERY events the index entries of those events are appended to a
+ * snapshot file, 8 bytes an event instead of the event's 38, so starting up reads the snapshot and only the events
+ * written after it. Saving a snapshot only writes the events since the last one, however long the log gets.
+ * <p>
+ * The log is a history only. Doom is recovered from the DoomJournal and plot points from their own store.
+ */
+public class EventLog implements HistoryStore {
+
+    private static final int SNAPSHOT_EVERY = 1000;
+    private static final int FLUSH_TIMEOUT_SECONDS = 5;
+    private static final int SNAPSHOT_MAGIC = 0x45564c49;
+    private static final int SNAPSHOT_MAGIC_SIZE = 4;
+    private static final long DOOM_KEY = -1;
+
+    private final Path path;
+    private final Path snapshotPath;
+    private final FileChannel channel;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<Long, RecordList> index = new ConcurrentHashMap<>();
+    //Index keys of the events after the last snapshot, in record order
+    private final List<Long> unsaved = new ArrayList<>();
+    private final FileChannel snapshot;
+    //How much of the snapshot file holds whole sections
+    private long snapshotSize;
+    private int records;
+    private int lastSnapshot;
+    //Set once a batch couldn't be written. Its records are gone, so no later flush can say everything is on disk.
+    private volatile boolean lost;
+
+    EventLog(String path) throws IOException {
+        this.path = Paths.get(path);
+        this.snapshotPath = Paths.get(path + ".snapshot");
+        channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        loadSnapshot();
+        replayTail();
+        snapshot = openSnapshot();
+        Thread writer = new Thread(this::write, "event-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //Opens the event log at path, replaying whatever it already holds
+    public static EventLog open(String path) throws IOException {
+        EventLog log = new EventLog(path);
+        Runtime.getRuntime().addShutdownHook(new Thread(log::flushQuietly, "event-log-flush"));
+        return log;
+    }
+
+    @Override
+    public void recordDoom(HistoryEvent.Command command, String actor, int delta, int value) {
+        queue.add(new HistoryEvent(System.currentTimeMillis(), HistoryEvent.Type.DOOM, command, parseID(actor), 0,
+                delta, value));
+    }
+
+    @Override
+    public void recordPlotPoints(HistoryEvent.Command command, String actor, String target, int delta, int value) {
+        queue.add(new HistoryEvent(System.currentTimeMillis(), HistoryEvent.Type.PLOT_POINTS, command, parseID(actor),
+                parseID(target), delta, value));
+    }
+
+    @Override
+    public List<HistoryEvent> getDoomHistory(int limit) throws IOException {
+        return read(index.get(DOOM_KEY), limit);
+    }
+
+    @Override
+    public List<HistoryEvent> getPlotPointHistory(String target, int limit) throws IOException {
+        return read(index.get(parseID(target)), limit);
+    }
+
+    //Waits until every event recorded so far is on disk
+    public void flush() throws InterruptedException {
+        flush(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    //Waits up to timeout for everything recorded so far to be on disk. Returns false if it didn't get there in time or
+    //any event has ever failed to be written.
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Boolean> written = new CompletableFuture<>();
+        queue.add(written);
+        try {
+            return written.get(timeout, unit);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<HistoryEvent> read(RecordList recordList, int limit) throws IOException {
+        if (recordList == null) {
+            return Collections.emptyList();
+        }
+        int[] recordNumbers = recordList.last(limit);
+        List<HistoryEvent> events = new ArrayList<>(recordNumbers.length);
+        ByteBuffer buffer = ByteBuffer.allocate(HistoryEvent.RECORD_SIZE);
+        for (int recordNumber : recordNumbers) {
+            buffer.clear();
+            long position = (long) recordNumber * HistoryEvent.RECORD_SIZE;
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) >= 0) {
+                //Keep reading until the whole record is in the buffer
+            }
+            buffer.flip();
+            HistoryEvent event = HistoryEvent.read(buffer);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        return events;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write() {
+        List<Object> queued = new ArrayList<>();
+        List<HistoryEvent> batch = new ArrayList<>();
+        List<CompletableFuture<Boolean>> waiting = new ArrayList<>();
+        while (true) {
+            try {
+                queued.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(queued);
+            for (Object item : queued) {
+                if (item instanceof CompletableFuture) {
+                    waiting.add((CompletableFuture<Boolean>) item);
+                } else {
+                    batch.add((HistoryEvent) item);
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(batch.size() * HistoryEvent.RECORD_SIZE);
+            for (HistoryEvent event : batch) {
+                event.write(buffer);
+            }
+            buffer.flip();
+            try {
+                long position = (long) records * HistoryEvent.RECORD_SIZE;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+                //Events only become visible to queries once they're on disk
+                for (HistoryEvent event : batch) {
+                    apply(event, records);
+                    records++;
+                }
+            } catch (IOException e) {
+                lost = true;
+                AuditLog.error("storage", "Cannot write to the history log " + path, e);
+            }
+            //The events are on disk even if the snapshot isn't saved, it only makes starting up quicker
+            if (records - lastSnapshot >= SNAPSHOT_EVERY) {
+                try {
+                    saveSnapshot();
+                } catch (IOException e) {
+                    AuditLog.error("storage", "Cannot save the history snapshot of " + path, e);
+                }
+            }
+            for (CompletableFuture<Boolean> waiter : waiting) {
+                waiter.complete(!lost);
+            }
+            queued.clear();
+            batch.clear();
+            waiting.clear();
+        }
+    }
+
+    private void apply(HistoryEvent event, int recordNumber) {
+        long key = event.getType() == HistoryEvent.Type.DOOM ? DOOM_KEY : event.getTarget();
+        index.computeIfAbsent(key, k -> new RecordList()).add(recordNumber);
+        unsaved.add(key);
+    }
+
+    //Reads the events after the last snapshot. Anything after a torn or corrupt record is cut off.
+    private void replayTail() throws IOException {
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(HistoryEvent.RECORD_SIZE * 1024);
+        long position = (long) records * HistoryEvent.RECORD_SIZE;
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read < HistoryEvent.RECORD_SIZE) {
+                break;
+            }
+            buffer.flip();
+            boolean torn = false;
+            while (buffer.remaining() >= HistoryEvent.RECORD_SIZE) {
+                HistoryEvent event = HistoryEvent.read(buffer);
+                if (event == null) {
+                    torn = true;
+                    break;
+                }
+                apply(event, records);
+                records++;
+                position += HistoryEvent.RECORD_SIZE;
+            }
+            if (torn) {
+                break;
+            }
+        }
+        channel.truncate((long) records * HistoryEvent.RECORD_SIZE);
+    }
+
+    //Appends a section for the events since the last snapshot: the first and last record number, then each one's key
+    private void saveSnapshot() throws IOException {
+        ByteBuffer section = ByteBuffer.allocate(8 + unsaved.size() * 8);
+        section.putInt(lastSnapshot).putInt(records);
+        for (long key : unsaved) {
+            section.putLong(key);
+        }
+        section.flip();
+        //Written over anything a failed save left behind
+        long position = snapshotSize;
+        while (section.hasRemaining()) {
+            position += snapshot.write(section, position);
+        }
+        snapshot.force(false);
+        snapshotSize = position;
+        lastSnapshot = records;
+        unsaved.clear();
+    }
+
+    //Restores the index from the snapshot's whole sections. Anything the snapshot doesn't cover is replayed from the log.
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                return;
+            }
+            snapshotSize = SNAPSHOT_MAGIC_SIZE;
+            long logRecords = channel.size() / HistoryEvent.RECORD_SIZE;
+            while (true) {
+                int from = in.readInt();
+                int to = in.readInt();
+                //A section that doesn't follow on or covers events the log lost is the end of the snapshot
+                if (from != records || to < from || to > logRecords) {
+                    break;
+                }
+                long[] keys = new long[to - from];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = in.readLong();
+                }
+                for (int i = 0; i < keys.length; i++) {
+                    index.computeIfAbsent(keys[i], k -> new RecordList()).add(from + i);
+                }
+                records = to;
+                snapshotSize += 8 + keys.length * 8L;
+            }
+        } catch (EOFException e) {
+            //A torn section at the end, which is written again
+        } catch (IOException e) {
+            AuditLog.error("storage", "Cannot read the history snapshot, replaying the rest of the log", e);
+        }
+        lastSnapshot = records;
+    }
+
+    //Opens the snapshot for appending after its last whole section, starting a new one if there were none
+    private FileChannel openSnapshot() throws IOException {
+        FileChannel file = FileChannel.open(snapshotPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (snapshotSize == 0) {
+            file.truncate(0);
+            file.write(ByteBuffer.allocate(SNAPSHOT_MAGIC_SIZE).putInt(0, SNAPSHOT_MAGIC), 0);
+            snapshotSize = SNAPSHOT_MAGIC_SIZE;
+        }
+        file.truncate(snapshotSize);
+        return file;
+    }
+
+    private static long parseID(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    //A growable list of record numbers
+    private static class RecordList {
+        private int[] recordNumbers = new int[16];
+        private int size;
+
+        synchronized void add(int recordNumber) {
+            if (size == recordNumbers.length) {
+                recordNumbers = Arrays.copyOf(recordNumbers, size * 2);
+            }
+            recordNumbers[size++] = recordNumber;
+        }
+
+        synchronized int[] last(int limit) {
+            int count = Math.min(limit, size);
+            return Arrays.copyOfRange(recordNumbers, size - count, size);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single change to the doom pool or to a player's plot points, as stored in the EventLog.
+ * <p>
+ * Events are stored as fixed size 38 byte records: timestamp, type, command, actor, target, delta, new value and a
+ * checksum.
+ */
+public class HistoryEvent {
+
+    public enum Type {DOOM, PLOT_POINTS}
+
+    //The command that caused the change. ROLL is doom generated by rolling 1s.
+    public enum Command {ROLL, ADD, SUB, SET, ADDALL}
+
+    static final int RECORD_SIZE = 38;
+    private static final int CHECKSUM_SEED = 0x45564e54;
+
+    private final long timestamp;
+    private final Type type;
+    private final Command command;
+    private final long actor;
+    private final long target;
+    private final int delta;
+    private final int value;
+
+    public HistoryEvent(long timestamp, Type type, Command command, long actor, long target, int delta, int value) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.command = command;
+        this.actor = actor;
+        this.target = target;
+        this.delta = delta;
+        this.value = value;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public Command getCommand() {
+        return command;
+    }
+
+    //The Discord ID of the user who ran the command
+    public long getActor() {
+        return actor;
+    }
+
+    //The Discord ID of the player whose plot points changed. Always 0 for doom.
+    public long getTarget() {
+        return target;
+    }
+
+    public int getDelta() {
+        return delta;
+    }
+
+    //The doom pool or the player's plot points after the change
+    public int getValue() {
+        return value;
+    }
+
+    void write(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putLong(timestamp)
+                .put((byte) type.ordinal())
+                .put((byte) command.ordinal())
+                .putLong(actor)
+                .putLong(target)
+                .putInt(delta)
+                .putInt(value);
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    //Reads an event from the buffer, or returns null if the record is torn or corrupt
+    static HistoryEvent read(ByteBuffer buffer) {
+        int start = buffer.position();
+        long timestamp = buffer.getLong();
+        byte type = buffer.get();
+        byte command = buffer.get();
+        long actor = buffer.getLong();
+        long target = buffer.getLong();
+        int delta = buffer.getInt();
+        int value = buffer.getInt();
+        int expected = checksum(buffer, start);
+        if (buffer.getInt() != expected || type < 0 || type >= Type.values().length
+                || command < 0 || command >= Command.values().length) {
+            return null;
+        }
+        return new HistoryEvent(timestamp, Type.values()[type], Command.values()[command], actor, target, delta, value);
+    }
+
+    //A simple rolling hash over the record's bytes before the checksum
+    private static int checksum(ByteBuffer buffer, int start) {
+        int hash = CHECKSUM_SEED;
+        for (int i = start; i < buffer.position(); i++) {
+            hash = hash * 31 + buffer.get(i);
+        }
+        return hash;
+    }
+}
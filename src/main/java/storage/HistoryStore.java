@@ -0,0 +1,23 @@
+package storage;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where a campaign's doom and plot point history lives: a local EventLog, or the ledger when several processes share
+ * one history
+ */
+public interface HistoryStore {
+
+    //Records a change to the doom pool
+    void recordDoom(HistoryEvent.Command command, String actor, int delta, int value);
+
+    //Records a change to a player's plot points
+    void recordPlotPoints(HistoryEvent.Command command, String actor, String target, int delta, int value);
+
+    //Returns up to limit of the most recent doom changes, oldest first
+    List<HistoryEvent> getDoomHistory(int limit) throws IOException;
+
+    //Returns up to limit of the most recent changes to a player's plot points, oldest first
+    List<HistoryEvent> getPlotPointHistory(String target, int limit) throws IOException;
+}
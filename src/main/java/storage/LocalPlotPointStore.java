@@ -0,0 +1,134 @@
+package storage;
+
+import audit.AuditLog;
+import sheets.IPlotPointMethods;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+/**
+ * Stores plot points in a memory-mapped file of fixed size records so the bot can run without Google Sheets.
+ * <p>
+ * The file starts with a header containing a magic number and the number of records in use. Every record after that
+ * is 16 bytes: the player's Discord ID as a long, their plot points as an int and 4 reserved bytes. An index of
+ * Discord ID to record slot is kept in memory so reads and writes never scan the file.
+ */
+public class LocalPlotPointStore implements IPlotPointMethods {
+
+    private static final int MAGIC = 0x32444550;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 16;
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final RandomAccessFile file;
+    private final HashMap<Long, Integer> slots = new HashMap<>();
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int recordCount;
+
+    public LocalPlotPointStore(String path) throws IOException {
+        file = new RandomAccessFile(path, "rw");
+        if (file.length() < HEADER_SIZE) {
+            map(INITIAL_CAPACITY);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, 0);
+        } else {
+            map((int) ((file.length() - HEADER_SIZE) / RECORD_SIZE));
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException(path + " is not a plot point file");
+            }
+            loadIndex();
+        }
+    }
+
+    //Sets the plot points of a player, adding a new record at the end of the file if the player hasn't been seen before
+    @Override
+    public synchronized int setPlotPoints(String target, int number) {
+        Long id = parseID(target);
+        if (id == null) {
+            return number;
+        }
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            slot = addRecord(id);
+        }
+        buffer.putInt(recordOffset(slot) + 8, number);
+        return number;
+    }
+
+    //Adds to a player's plot points under the same lock as reads and writes, so concurrent adds aren't lost
+    @Override
+    public synchronized int addPlotPoints(String target, int delta) {
+        return setPlotPoints(target, getPlotPoints(target) + delta);
+    }
+
+    //Returns a player's plot points. Players without a record have 0 plot points.
+    @Override
+    public synchronized int getPlotPoints(String target) {
+        Long id = parseID(target);
+        if (id == null) {
+            return 0;
+        }
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            return 0;
+        }
+        return buffer.getInt(recordOffset(slot) + 8);
+    }
+
+    //Forces changes in the mapped file to be written to disk
+    public synchronized void flush() {
+        buffer.force();
+    }
+
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private void loadIndex() {
+        recordCount = buffer.getInt(4);
+        for (int slot = 0; slot < recordCount; slot++) {
+            slots.put(buffer.getLong(recordOffset(slot)), slot);
+        }
+    }
+
+    private int addRecord(long id) {
+        if (recordCount == capacity) {
+            try {
+                map(capacity * 2);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot grow plot point file", e);
+            }
+        }
+        int slot = recordCount++;
+        buffer.putLong(recordOffset(slot), id);
+        buffer.putInt(recordOffset(slot) + 8, 0);
+        buffer.putInt(4, recordCount);
+        slots.put(id, slot);
+        return slot;
+    }
+
+    //Maps the file with room for the given number of records, growing the file if needed
+    private void map(int records) throws IOException {
+        capacity = Math.max(records, INITIAL_CAPACITY);
+        buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity * RECORD_SIZE);
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    //Discord IDs are snowflakes, so anything that isn't a number can't be a player
+    private static Long parseID(String target) {
+        try {
+            return Long.parseLong(target);
+        } catch (NumberFormatException e) {
+            AuditLog.info("storage", "Invalid player ID: " + target);
+            return null;
+        }
+    }
+}
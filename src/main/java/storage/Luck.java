@@ -0,0 +1,99 @@
+package storage;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * How lucky a player's rolls have been, kept up to date one roll at a time so nothing has to be read back from the
+ * RollLog. Never changed once created.
+ */
+public class Luck {
+
+    //How many of the latest percentiles are remembered
+    static final int RECENT = 10;
+
+    static final Luck NONE = new Luck(0, 0, 0, 0, 0, new float[0]);
+
+    private final int rolls;
+    private final double percentileSum;
+    private final double zScoreSum;
+    private final int doom;
+    private final double expectedDoom;
+    private final float[] recent;
+
+    private Luck(int rolls, double percentileSum, double zScoreSum, int doom, double expectedDoom, float[] recent) {
+        this.rolls = rolls;
+        this.percentileSum = percentileSum;
+        this.zScoreSum = zScoreSum;
+        this.doom = doom;
+        this.expectedDoom = expectedDoom;
+        this.recent = recent;
+    }
+
+    //This luck with one more roll counted
+    Luck plus(RollRecord roll) {
+        float[] newRecent = Arrays.copyOfRange(recent, Math.max(0, recent.length - RECENT + 1), recent.length + 1);
+        newRecent[newRecent.length - 1] = roll.getPercentile();
+        return new Luck(rolls + 1, percentileSum + roll.getPercentile(), zScoreSum + roll.getZScore(),
+                doom + roll.getDoom(), expectedDoom + roll.getExpectedDoom(), newRecent);
+    }
+
+    public int getRolls() {
+        return rolls;
+    }
+
+    //The average percentile of the player's totals, from 0 to 1. An unremarkable player averages 0.5.
+    public double getAveragePercentile() {
+        return rolls == 0 ? 0.5 : percentileSum / rolls;
+    }
+
+    /*
+    The z-scores of the rolls combined into one (Stouffer's method). Around 0 is normal luck, and anything beyond 2 or
+    -2 happens by chance less than 5% of the time.
+     */
+    public double getZScore() {
+        return rolls == 0 ? 0 : zScoreSum / Math.sqrt(rolls);
+    }
+
+    //The doom the player's rolls have generated
+    public int getDoom() {
+        return doom;
+    }
+
+    //The doom the player's rolls generate on average
+    public double getExpectedDoom() {
+        return expectedDoom;
+    }
+
+    //The percentiles of the player's latest rolls, oldest first
+    public float[] getRecentPercentiles() {
+        return recent.clone();
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(rolls);
+        out.writeDouble(percentileSum);
+        out.writeDouble(zScoreSum);
+        out.writeInt(doom);
+        out.writeDouble(expectedDoom);
+        out.writeByte(recent.length);
+        for (float percentile : recent) {
+            out.writeFloat(percentile);
+        }
+    }
+
+    static Luck read(DataInputStream in) throws IOException {
+        int rolls = in.readInt();
+        double percentileSum = in.readDouble();
+        double zScoreSum = in.readDouble();
+        int doom = in.readInt();
+        double expectedDoom = in.readDouble();
+        float[] recent = new float[in.readUnsignedByte()];
+        for (int i = 0; i < recent.length; i++) {
+            recent[i] = in.readFloat();
+        }
+        return new Luck(rolls, percentileSum, zScoreSum, doom, expectedDoom, recent);
+    }
+}
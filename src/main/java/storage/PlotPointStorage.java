@@ -0,0 +1,38 @@
+package storage;
+
+import config.PlayerDirectory;
+import sheets.IPlotPointMethods;
+import sheets.PPManager;
+
+import java.io.IOException;
+import java.util.function.Supplier;
+
+/**
+ * Picks a campaign's plot point backend. "plotpoints=local" keeps plot points in a local file instead of the players'
+ * Google Sheets.
+ */
+public class PlotPointStorage {
+
+    private PlotPointStorage() {
+    }
+
+    /**
+     * Opens a plot point store
+     *
+     * @param mode    "local" for a local file, anything else for the players' Google Sheets
+     * @param file    Where a local store keeps its file
+     * @param players The players whose sheets hold their plot points
+     * @throws IllegalStateException if the local file can't be opened. Plot points are never moved to Google Sheets
+     *                               instead, since a campaign that asked for a local store may be offline.
+     */
+    public static IPlotPointMethods open(String mode, String file, Supplier<PlayerDirectory> players) {
+        if ("local".equals(mode)) {
+            try {
+                return new LocalPlotPointStore(file);
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot open the plot point file " + file, e);
+            }
+        }
+        return new PPManager(players);
+    }
+}
@@ -0,0 +1,253 @@
+package storage;
+
+import audit.AuditLog;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * An append-only binary log of every ~r roll in a campaign.
+ * <p>
+ * Rolls are queued and written by a background thread so recording one never slows down a roll. Each player's Luck is
+ * updated as their rolls reach the disk, so asking how lucky someone has been never reads the log. Every SNAPSHOT_EVERY
+ * rolls the luck of every player is saved to a snapshot file along with how much of the log it covers, so starting up
+ * only has to read the rolls written after the last snapshot.
+ */
+public class RollLog {
+
+    private static final int SNAPSHOT_EVERY = 500;
+    private static final int FLUSH_TIMEOUT_SECONDS = 5;
+    private static final int SNAPSHOT_MAGIC = 0x524c4c53;
+    private static final int MAX_RECORD_SIZE = 0xffff;
+
+    private final Path snapshotPath;
+    private final FileChannel channel;
+    private final LinkedBlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+    private final ConcurrentHashMap<Long, Luck> luck = new ConcurrentHashMap<>();
+    private volatile long size;
+    private volatile int rolls;
+    private int lastSnapshot;
+    //Set once a batch couldn't be written. Its records are gone, so no later flush can say everything is on disk.
+    private volatile boolean lost;
+
+    RollLog(String path) throws IOException {
+        this.snapshotPath = Paths.get(path + ".snapshot");
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        loadSnapshot();
+        replayTail();
+        Thread writer = new Thread(this::write, "roll-log");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    //Opens the roll log at path, catching up on whatever it already holds
+    public static RollLog open(String path) throws IOException {
+        RollLog log = new RollLog(path);
+        Runtime.getRuntime().addShutdownHook(new Thread(log::flushQuietly, "roll-log-flush"));
+        return log;
+    }
+
+    //Records a roll. Rolls of so many dice that they don't fit in a record are left out.
+    public void record(RollRecord roll) {
+        if (roll.size() <= MAX_RECORD_SIZE) {
+            queue.add(roll);
+        }
+    }
+
+    //How lucky a player's rolls have been
+    public Luck getLuck(String player) {
+        return luck.getOrDefault(parseID(player), Luck.NONE);
+    }
+
+    //Waits until every roll recorded so far is on disk
+    public void flush() throws InterruptedException {
+        flush(FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    //Waits up to timeout for everything recorded so far to be on disk. Returns false if it didn't get there in time or
+    //any roll has ever failed to be written.
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        CompletableFuture<Boolean> written = new CompletableFuture<>();
+        queue.add(written);
+        try {
+            return written.get(timeout, unit);
+        } catch (TimeoutException | ExecutionException e) {
+            return false;
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int size() {
+        return rolls;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void write() {
+        List<Object> queued = new ArrayList<>();
+        List<RollRecord> batch = new ArrayList<>();
+        List<CompletableFuture<Boolean>> waiting = new ArrayList<>();
+        while (true) {
+            try {
+                queued.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(queued);
+            int bytes = 0;
+            for (Object item : queued) {
+                if (item instanceof CompletableFuture) {
+                    waiting.add((CompletableFuture<Boolean>) item);
+                } else {
+                    batch.add((RollRecord) item);
+                    bytes += ((RollRecord) item).size();
+                }
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(bytes);
+            for (RollRecord roll : batch) {
+                roll.write(buffer);
+            }
+            buffer.flip();
+            try {
+                long position = size;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                channel.force(false);
+                //Rolls only count towards luck once they're on disk
+                for (RollRecord roll : batch) {
+                    apply(roll);
+                }
+                size = position;
+            } catch (IOException e) {
+                lost = true;
+                AuditLog.error("storage", "Cannot write to the roll log", e);
+            }
+            //The rolls are on disk even if the snapshot isn't saved, it only makes starting up quicker
+            if (rolls - lastSnapshot >= SNAPSHOT_EVERY) {
+                try {
+                    saveSnapshot();
+                } catch (IOException e) {
+                    AuditLog.error("storage", "Cannot save the roll log snapshot", e);
+                }
+            }
+            for (CompletableFuture<Boolean> waiter : waiting) {
+                waiter.complete(!lost);
+            }
+            queued.clear();
+            batch.clear();
+            waiting.clear();
+        }
+    }
+
+    private void apply(RollRecord roll) {
+        if (roll.hasStatistics()) {
+            luck.compute(roll.getPlayer(), (player, before) -> (before != null ? before : Luck.NONE).plus(roll));
+        }
+        rolls++;
+    }
+
+    //Reads the rolls after the last snapshot. Anything after a torn or corrupt record is cut off.
+    private void replayTail() throws IOException {
+        long end = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_RECORD_SIZE * 4);
+        long position = size;
+        while (position < end) {
+            buffer.clear();
+            if (channel.read(buffer, position) <= 0) {
+                break;
+            }
+            buffer.flip();
+            int before = buffer.position();
+            RollRecord roll;
+            while ((roll = RollRecord.read(buffer)) != null) {
+                apply(roll);
+                before = buffer.position();
+            }
+            //Either the buffer ended partway through a record, which the next read starts from, or the record is bad
+            if (before == 0) {
+                break;
+            }
+            position += before;
+        }
+        size = position;
+        channel.truncate(position);
+    }
+
+    private void saveSnapshot() throws IOException {
+        Path temp = Paths.get(snapshotPath + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(size);
+            out.writeInt(rolls);
+            out.writeInt(luck.size());
+            for (Map.Entry<Long, Luck> player : luck.entrySet()) {
+                out.writeLong(player.getKey());
+                player.getValue().write(out);
+            }
+        }
+        Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        lastSnapshot = rolls;
+    }
+
+    //Restores every player's luck from the snapshot. A missing or unreadable snapshot means reading the whole log.
+    private void loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotPath)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                return;
+            }
+            long snapshotSize = in.readLong();
+            if (snapshotSize > channel.size()) {
+                return;
+            }
+            int snapshotRolls = in.readInt();
+            int players = in.readInt();
+            for (int i = 0; i < players; i++) {
+                luck.put(in.readLong(), Luck.read(in));
+            }
+            size = snapshotSize;
+            rolls = snapshotRolls;
+            lastSnapshot = snapshotRolls;
+        } catch (IOException e) {
+            AuditLog.error("storage", "Cannot read the roll log snapshot, replaying the whole log", e);
+            luck.clear();
+        }
+    }
+
+    private static long parseID(String id) {
+        try {
+            return Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single ~r roll, as stored in the RollLog, along with how lucky it was compared with the exact distribution of its
+ * pool.
+ * <p>
+ * Records are variable sized: a 2 byte length, timestamp, player, total, doom, percentile, z-score, expected doom, the
+ * number of regular and plot dice, the size and face of each die and a checksum. A roll of three dice and a plot die
+ * takes 60 bytes.
+ */
+public class RollRecord {
+
+    static final int HEADER_SIZE = 40;
+    static final int DIE_SIZE = 4;
+    static final int CHECKSUM_SIZE = 4;
+    private static final int CHECKSUM_SEED = 0x524f4c4c;
+
+    private final long timestamp;
+    private final long player;
+    private final int[] dice;
+    private final int[] faces;
+    private final int[] plotDice;
+    private final int[] plotFaces;
+    private final int total;
+    private final int doom;
+    private final float percentile;
+    private final float zScore;
+    private final float expectedDoom;
+
+    /**
+     * @param percentile   The chance of rolling less than the total plus half the chance of rolling it, from 0 to 1.
+     *                     NaN if the pool was too big to have statistics.
+     * @param zScore       How many standard deviations the total was above the pool's average
+     * @param expectedDoom The average doom the pool generates
+     */
+    public RollRecord(long timestamp, long player, int[] dice, int[] faces, int[] plotDice, int[] plotFaces, int total,
+                      int doom, float percentile, float zScore, float expectedDoom) {
+        this.timestamp = timestamp;
+        this.player = player;
+        this.dice = dice;
+        this.faces = faces;
+        this.plotDice = plotDice;
+        this.plotFaces = plotFaces;
+        this.total = total;
+        this.doom = doom;
+        this.percentile = percentile;
+        this.zScore = zScore;
+        this.expectedDoom = expectedDoom;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    //The Discord ID of the player who rolled
+    public long getPlayer() {
+        return player;
+    }
+
+    //The size of each regular die in the pool
+    public int[] getDice() {
+        return dice;
+    }
+
+    //What each regular die came up
+    public int[] getFaces() {
+        return faces;
+    }
+
+    public int[] getPlotDice() {
+        return plotDice;
+    }
+
+    public int[] getPlotFaces() {
+        return plotFaces;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getDoom() {
+        return doom;
+    }
+
+    public float getPercentile() {
+        return percentile;
+    }
+
+    public float getZScore() {
+        return zScore;
+    }
+
+    public float getExpectedDoom() {
+        return expectedDoom;
+    }
+
+    //Whether the pool had statistics to compare the roll with
+    public boolean hasStatistics() {
+        return !Float.isNaN(percentile);
+    }
+
+    int size() {
+        return HEADER_SIZE + (dice.length + plotDice.length) * DIE_SIZE + CHECKSUM_SIZE;
+    }
+
+    void write(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putShort((short) size())
+                .putLong(timestamp)
+                .putLong(player)
+                .putInt(total)
+                .putShort((short) doom)
+                .putFloat(percentile)
+                .putFloat(zScore)
+                .putFloat(expectedDoom)
+                .putShort((short) dice.length)
+                .putShort((short) plotDice.length);
+        for (int i = 0; i < dice.length; i++) {
+            buffer.putShort((short) dice[i]).putShort((short) faces[i]);
+        }
+        for (int i = 0; i < plotDice.length; i++) {
+            buffer.putShort((short) plotDice[i]).putShort((short) plotFaces[i]);
+        }
+        buffer.putInt(checksum(buffer, start));
+    }
+
+    /**
+     * Reads a record from the buffer
+     *
+     * @return The record, or null if the buffer doesn't hold a whole record or the record is corrupt
+     */
+    static RollRecord read(ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < HEADER_SIZE + CHECKSUM_SIZE) {
+            return null;
+        }
+        int size = buffer.getShort(start) & 0xffff;
+        if (size < HEADER_SIZE + CHECKSUM_SIZE || size > buffer.remaining()) {
+            return null;
+        }
+        buffer.getShort();
+        long timestamp = buffer.getLong();
+        long player = buffer.getLong();
+        int total = buffer.getInt();
+        int doom = buffer.getShort();
+        float percentile = buffer.getFloat();
+        float zScore = buffer.getFloat();
+        float expectedDoom = buffer.getFloat();
+        int[] dice = new int[buffer.getShort() & 0xffff];
+        int[] plotDice = new int[buffer.getShort() & 0xffff];
+        if (size != HEADER_SIZE + (dice.length + plotDice.length) * DIE_SIZE + CHECKSUM_SIZE) {
+            return null;
+        }
+        int[] faces = new int[dice.length];
+        int[] plotFaces = new int[plotDice.length];
+        for (int i = 0; i < dice.length; i++) {
+            dice[i] = buffer.getShort();
+            faces[i] = buffer.getShort();
+        }
+        for (int i = 0; i < plotDice.length; i++) {
+            plotDice[i] = buffer.getShort();
+            plotFaces[i] = buffer.getShort();
+        }
+        int expected = checksum(buffer, start);
+        if (buffer.getInt() != expected) {
+            return null;
+        }
+        return new RollRecord(timestamp, player, dice, faces, plotDice, plotFaces, total, doom, percentile, zScore,
+                expectedDoom);
+    }
+
+    //A simple rolling hash over the record's bytes before the checksum
+    private static int checksum(ByteBuffer buffer, int start) {
+        int hash = CHECKSUM_SEED;
+        for (int i = start; i < buffer.position(); i++) {
+            hash = hash * 31 + buffer.get(i);
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,14 @@
+package transport;
+
+/**
+ * The user who sent a command, or any other user the bot needs to show in an embed
+ */
+public interface Author {
+
+    String getIdAsString();
+
+    String getDisplayName();
+
+    //The URL of the user's avatar, or null if they don't have one
+    String getAvatarUrl();
+}
@@ -0,0 +1,21 @@
+package transport;
+
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A text channel commands are read from and replies are sent to
+ */
+public interface Channel {
+
+    String getIdAsString();
+
+    //The ID of the server the channel is in, or null for a direct message
+    String getServerIdAsString();
+
+    //Sends an embed. The future completes with the sent message once it has been delivered.
+    CompletableFuture<Reply> send(EmbedBuilder embed);
+
+    void send(String content);
+}
@@ -0,0 +1,10 @@
+package transport;
+
+/**
+ * Called for every message that starts with "~"
+ */
+@FunctionalInterface
+public interface CommandListener {
+
+    void onCommand(String content, Author author, Channel channel);
+}
@@ -0,0 +1,182 @@
+package transport;
+
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * An in-memory transport with no network behind it. Commands are delivered with deliver(), which runs the listeners
+ * on the calling thread, so when it returns the command has been handled and every reply has been "sent". Replies are
+ * counted per channel and the last one is kept so they can be checked.
+ */
+public class FakeTransport implements Transport {
+
+    private final List<CommandListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, FakeChannel> channels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Author> users = new ConcurrentHashMap<>();
+    //Voice channel ID -> the IDs of the users in it
+    private final ConcurrentHashMap<String, Set<String>> voiceMembers = new ConcurrentHashMap<>();
+    private final AtomicLong sent = new AtomicLong();
+    private volatile boolean connected = true;
+
+    public Author addUser(String id, String name) {
+        Author user = new KnownUser(id, name, null);
+        users.put(id, user);
+        return user;
+    }
+
+    //Adds a text channel in a server. Channels that aren't added are treated as direct messages.
+    public void addChannel(String channelID, String serverID) {
+        channels.put(channelID, new FakeChannel(channelID, serverID));
+    }
+
+    public void joinVoice(String channelID, String userID) {
+        voiceMembers.computeIfAbsent(channelID, id -> ConcurrentHashMap.newKeySet()).add(userID);
+    }
+
+    public void leaveVoice(String channelID, String userID) {
+        Set<String> members = voiceMembers.get(channelID);
+        if (members != null) {
+            members.remove(userID);
+        }
+    }
+
+    //Sends a message from a user to a channel, handling it before returning. Unknown users are added on the fly.
+    public void deliver(String channelID, String userID, String content) {
+        if (!connected || !content.startsWith("~")) {
+            return;
+        }
+        Author author = users.computeIfAbsent(userID, id -> new KnownUser(id, id, null));
+        FakeChannel channel = channels.computeIfAbsent(channelID, id -> new FakeChannel(id, null));
+        for (CommandListener listener : listeners) {
+            listener.onCommand(content, author, channel);
+        }
+    }
+
+    //The number of replies sent to every channel
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public void addCommandListener(CommandListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public Optional<Channel> getChannel(String id) {
+        return Optional.of(channels.computeIfAbsent(id, channelID -> new FakeChannel(channelID, null)));
+    }
+
+    @Override
+    public Optional<Author> getUser(String id) {
+        return Optional.ofNullable(users.get(id));
+    }
+
+    @Override
+    public boolean isInVoiceChannel(String channelID, String userID) {
+        Set<String> members = voiceMembers.get(channelID);
+        return members != null && members.contains(userID);
+    }
+
+    @Override
+    public void disconnect(long timeoutMillis) {
+        connected = false;
+    }
+
+    public class FakeChannel implements Channel {
+        private final String id;
+        private final String serverID;
+        private final AtomicLong count = new AtomicLong();
+        private volatile Object lastSent;
+
+        FakeChannel(String id, String serverID) {
+            this.id = id;
+            this.serverID = serverID;
+        }
+
+        @Override
+        public String getIdAsString() {
+            return id;
+        }
+
+        @Override
+        public String getServerIdAsString() {
+            return serverID;
+        }
+
+        @Override
+        public CompletableFuture<Reply> send(EmbedBuilder embed) {
+            record(embed);
+            return CompletableFuture.completedFuture(new FakeReply(this));
+        }
+
+        @Override
+        public void send(String content) {
+            record(content);
+        }
+
+        //The number of replies sent to this channel
+        public long getSentCount() {
+            return count.get();
+        }
+
+        //The last EmbedBuilder or String sent to this channel
+        public Object getLastSent() {
+            return lastSent;
+        }
+
+        private void record(Object message) {
+            lastSent = message;
+            count.incrementAndGet();
+            sent.incrementAndGet();
+        }
+    }
+
+    //A sent embed. Edits replace the channel's last sent message without counting as a new reply.
+    public static class FakeReply implements Reply {
+        private final FakeChannel channel;
+        private final Map<String, Consumer<String>> reactionListeners = new ConcurrentHashMap<>();
+        private final AtomicLong edits = new AtomicLong();
+
+        FakeReply(FakeChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void edit(EmbedBuilder embed) {
+            channel.lastSent = embed;
+            edits.incrementAndGet();
+        }
+
+        @Override
+        public Runnable onReaction(String emoji, Consumer<String> listener) {
+            reactionListeners.put(emoji, listener);
+            return () -> reactionListeners.remove(emoji);
+        }
+
+        //Simulates a user clicking a reaction
+        public void react(String emoji, String userID) {
+            Consumer<String> listener = reactionListeners.get(emoji);
+            if (listener != null) {
+                listener.accept(userID);
+            }
+        }
+
+        public long getEditCount() {
+            return edits.get();
+        }
+    }
+}
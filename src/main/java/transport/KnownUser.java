@@ -0,0 +1,32 @@
+package transport;
+
+/**
+ * A user known only by their ID, name and avatar, such as a simulated user or one restored from a snapshot
+ */
+public class KnownUser implements Author {
+
+    private final String id;
+    private final String name;
+    private final String avatarUrl;
+
+    public KnownUser(String id, String name, String avatarUrl) {
+        this.id = id;
+        this.name = name;
+        this.avatarUrl = avatarUrl;
+    }
+
+    @Override
+    public String getIdAsString() {
+        return id;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return name;
+    }
+
+    @Override
+    public String getAvatarUrl() {
+        return avatarUrl;
+    }
+}
@@ -0,0 +1,300 @@
+package transport;
+
+import campaign.Campaign;
+import campaign.CampaignRegistry;
+import config.ConfigRegistry;
+import logic.CommandHandler;
+import sheets.CharacterCache;
+import sheets.LocalSheetSource;
+import sheets.SheetsQuickstart;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Replays a mix of ~r, ~s, ~p and ~d commands from simulated users in simulated channels through a FakeTransport and
+ * reports the throughput and p50/p99 latency of each command. Character sheets come from a LocalSheetSource and plot
+ * points, doom and history are kept in a temporary directory, so nothing touches Discord or Google.
+ * <p>
+ * The channels are split between the campaigns and every command runs on its campaign's threads, so the latencies
+ * include any time spent waiting behind the campaign's other commands.
+ * <p>
+ * Usage: LoadGenerator [channels] [users] [commands] [threads] [campaigns]
+ */
+public class LoadGenerator {
+
+    private static final long FIRST_USER = 300000000000000000L;
+    private static final long FIRST_CHANNEL = 400000000000000000L;
+    private static final long FIRST_VOICE_CHANNEL = 500000000000000000L;
+    private static final String[] SKILLS = {"Athletics", "Stealth", "Persuasion", "Medicine", "Piloting", "Shooting",
+            "Survival", "Technology", "Knowledge", "Perception"};
+    private static final int[] DICE = {4, 6, 8, 10, 12};
+
+    private final int channels;
+    private final int users;
+    private final int campaigns;
+
+    private LoadGenerator(int channels, int users, int campaigns) {
+        this.channels = channels;
+        this.users = users;
+        this.campaigns = campaigns;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int channels = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int users = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        int commands = args.length > 2 ? Integer.parseInt(args[2]) : 50000;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+        int campaigns = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+
+        Path directory = Files.createTempDirectory("twodee-load");
+        LoadGenerator generator = new LoadGenerator(channels, users, campaigns);
+        FakeTransport transport = generator.setUp(directory);
+        System.out.printf("%d commands from %d users in %d channels of %d campaigns on %d threads%n", commands, users,
+                channels, campaigns, threads);
+
+        //Warm up the JIT so the report measures the handlers rather than the interpreter
+        generator.run(transport, Math.min(commands, 10000), threads);
+        Map<String, Samples> results = generator.run(transport, commands, threads);
+        report(results);
+        System.out.printf("%d replies sent. Plot points, doom, history and rolls are in %s%n", transport.getSentCount(),
+                directory);
+        System.exit(0);
+    }
+
+    //Points the configuration, character sheets and transport at in-memory or temporary stand-ins
+    private FakeTransport setUp(Path directory) throws IOException {
+        Properties bot = new Properties();
+        List<String> names = new ArrayList<>();
+        for (int c = 0; c < campaigns; c++) {
+            String name = "load" + c;
+            String prefix = "campaign." + name + ".";
+            Path campaignDirectory = Files.createDirectories(directory.resolve(name));
+            names.add(name);
+            bot.setProperty(prefix + "plotpoints", "local");
+            bot.setProperty(prefix + "plotpoints.file", campaignDirectory.resolve("plotpoints.dat").toString());
+            bot.setProperty(prefix + "doom.journal", campaignDirectory.resolve("doom.journal").toString());
+            bot.setProperty(prefix + "events.log", campaignDirectory.resolve("events.log").toString());
+            bot.setProperty(prefix + "rolls.log", campaignDirectory.resolve("rolls.log").toString());
+            bot.setProperty(prefix + "session", String.valueOf(FIRST_VOICE_CHANNEL + c));
+            List<String> campaignChannels = new ArrayList<>();
+            for (int channel = c; channel < channels; channel += campaigns) {
+                campaignChannels.add(String.valueOf(FIRST_CHANNEL + channel));
+            }
+            bot.setProperty(prefix + "channels", String.join(",", campaignChannels));
+        }
+        bot.setProperty("campaigns", String.join(",", names));
+        //Every campaign has the same players, each with their own plot points, doom and history
+        Properties columns = new Properties();
+        Map<String, Map<String, Object>> userRecords = new HashMap<>();
+        LocalSheetSource sheets = new LocalSheetSource();
+        FakeTransport transport = new FakeTransport();
+        for (int i = 0; i < users; i++) {
+            String id = userID(i);
+            String skillColumn = toColumn(i * 2);
+            String diceColumn = toColumn(i * 2 + 1);
+            userRecords.put(id, Collections.emptyMap());
+            columns.setProperty(id, skillColumn + "," + diceColumn);
+            for (int row = 0; row < SKILLS.length; row++) {
+                sheets.setCell(SheetsQuickstart.CHARACTER_SPREADSHEET_ID, "Data", skillColumn + (row + 1), SKILLS[row]);
+                sheets.setCell(SheetsQuickstart.CHARACTER_SPREADSHEET_ID, "Data", diceColumn + (row + 1),
+                        String.valueOf(DICE[(i + row) % DICE.length]));
+            }
+            transport.addUser(id, "Player " + i);
+            if (i % 2 == 0) {
+                for (int c = 0; c < campaigns; c++) {
+                    transport.joinVoice(String.valueOf(FIRST_VOICE_CHANNEL + c), id);
+                }
+            }
+        }
+        ConfigRegistry.set(bot, columns, userRecords);
+        CharacterCache.setSource(sheets);
+        TransportRegistry.set(transport);
+        //Like CommandDispatcher, but waits for the command so it can be timed
+        transport.addCommandListener((content, author, channel) -> {
+            Campaign campaign = CampaignRegistry.forChannel(channel);
+            CompletableFuture.runAsync(() -> new CommandHandler(content, author, channel, campaign),
+                    campaign::execute).join();
+        });
+        return transport;
+    }
+
+    //Sends commands from random users in random channels and times each one
+    private Map<String, Samples> run(FakeTransport transport, int commands, int threads) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Map<String, Samples>>> workers = new ArrayList<>();
+        PrintStream console = System.out;
+        //CommandHandler prints every command, which would otherwise be most of what gets measured
+        System.setOut(new PrintStream(new OutputStream() {
+            @Override
+            public void write(int b) {
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+            }
+        }));
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int count = commands / threads + (t < commands % threads ? 1 : 0);
+            long seed = t;
+            workers.add(executor.submit(() -> {
+                Random random = new Random(seed);
+                Map<String, Samples> samples = new HashMap<>();
+                for (int i = 0; i < count; i++) {
+                    String user = userID(random.nextInt(users));
+                    String channel = String.valueOf(FIRST_CHANNEL + random.nextInt(channels));
+                    String command = nextCommand(random, user);
+                    Samples commandSamples = samples.computeIfAbsent(command.split(" ")[0], key -> new Samples());
+                    long sent = System.nanoTime();
+                    try {
+                        transport.deliver(channel, user, command);
+                    } catch (RuntimeException e) {
+                        commandSamples.errors++;
+                        if (commandSamples.errors == 1) {
+                            e.printStackTrace();
+                        }
+                    }
+                    commandSamples.add(System.nanoTime() - sent);
+                }
+                return samples;
+            }));
+        }
+        Map<String, Samples> merged = new TreeMap<>();
+        try {
+            for (Future<Map<String, Samples>> worker : workers) {
+                for (Map.Entry<String, Samples> entry : worker.get().entrySet()) {
+                    merged.computeIfAbsent(entry.getKey(), key -> new Samples()).addAll(entry.getValue());
+                }
+            }
+        } finally {
+            System.setOut(console);
+            executor.shutdown();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Samples samples : merged.values()) {
+            samples.wallTime = elapsed;
+        }
+        return merged;
+    }
+
+    //Picks a command roughly the way a session uses them: mostly rolls, then plot points, statistics and doom
+    private String nextCommand(Random random, String user) {
+        int type = random.nextInt(100);
+        if (type < 45) {
+            return "~r " + pool(random, true);
+        }
+        if (type < 65) {
+            return "~s " + pool(random, false);
+        }
+        if (type < 90) {
+            int kind = random.nextInt(10);
+            String other = "<@!" + userID(random.nextInt(users)) + ">";
+            if (kind < 5) {
+                return "~p " + other;
+            }
+            if (kind < 8) {
+                return "~p add 1";
+            }
+            return kind < 9 ? "~p " + other + " sub 1" : "~p history";
+        }
+        int kind = random.nextInt(10);
+        if (kind < 6) {
+            return "~d";
+        }
+        return kind < 9 ? "~d add 1" : "~d history";
+    }
+
+    //Two to four dice, sometimes with a plot die and sometimes with a skill name in place of a die
+    private static String pool(Random random, boolean allowSkills) {
+        List<String> dice = new ArrayList<>();
+        int size = 2 + random.nextInt(3);
+        for (int i = 0; i < size; i++) {
+            dice.add("d" + DICE[random.nextInt(DICE.length)]);
+        }
+        if (allowSkills && random.nextInt(10) < 3) {
+            dice.set(0, SKILLS[random.nextInt(SKILLS.length)].toLowerCase());
+        }
+        if (random.nextInt(10) < 3) {
+            dice.add("pd" + DICE[random.nextInt(DICE.length)]);
+        }
+        return String.join(" ", dice);
+    }
+
+    private static String userID(int index) {
+        return String.valueOf(FIRST_USER + index);
+    }
+
+    //Converts a zero based column number into a column name such as "AB"
+    private static String toColumn(int index) {
+        StringBuilder column = new StringBuilder();
+        for (int i = index + 1; i > 0; i = (i - 1) / 26) {
+            column.insert(0, (char) ('A' + (i - 1) % 26));
+        }
+        return column.toString();
+    }
+
+    private static void report(Map<String, Samples> results) {
+        System.out.printf("%-8s %10s %8s %12s %12s %12s%n", "command", "count", "errors", "per second", "p50 (ms)",
+                "p99 (ms)");
+        Samples total = new Samples();
+        for (Map.Entry<String, Samples> entry : results.entrySet()) {
+            print(entry.getKey(), entry.getValue());
+            total.addAll(entry.getValue());
+            total.wallTime = entry.getValue().wallTime;
+        }
+        print("total", total);
+    }
+
+    private static void print(String command, Samples samples) {
+        System.out.printf("%-8s %10d %8d %12.1f %12.3f %12.3f%n", command, samples.size, samples.errors,
+                samples.size / (samples.wallTime / 1e9), samples.percentile(50) / 1e6, samples.percentile(99) / 1e6);
+    }
+
+    //Latencies in nanoseconds
+    private static class Samples {
+        private long[] latencies = new long[1024];
+        private int size;
+        private int errors;
+        private long wallTime;
+
+        void add(long latency) {
+            if (size == latencies.length) {
+                latencies = Arrays.copyOf(latencies, size * 2);
+            }
+            latencies[size++] = latency;
+        }
+
+        void addAll(Samples other) {
+            errors += other.errors;
+            for (int i = 0; i < other.size; i++) {
+                add(other.latencies[i]);
+            }
+        }
+
+        long percentile(int percent) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, size);
+            Arrays.sort(sorted);
+            return sorted[Math.min(size - 1, (int) Math.ceil(percent / 100.0 * size) - 1)];
+        }
+    }
+}
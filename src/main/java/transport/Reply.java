@@ -0,0 +1,21 @@
+package transport;
+
+import org.javacord.api.entity.message.embed.EmbedBuilder;
+
+import java.util.function.Consumer;
+
+/**
+ * An embed the bot has sent, which it can keep updating, e.g. with the progress of a long calculation
+ */
+public interface Reply {
+
+    //Replaces the embed. Chat services limit how often a message can be edited, so callers should edit sparingly.
+    void edit(EmbedBuilder embed);
+
+    /**
+     * Adds a reaction for users to click and calls listener with the ID of every user who clicks it
+     *
+     * @return Stops listening and removes the reaction
+     */
+    Runnable onReaction(String emoji, Consumer<String> listener);
+}
@@ -0,0 +1,33 @@
+package transport;
+
+import java.util.Optional;
+
+/**
+ * Everything the command handlers need from a chat service: incoming commands, somewhere to reply, the users behind
+ * the IDs and who is in which voice channel. DiscordTransport talks to Discord and FakeTransport runs entirely
+ * in memory so the bot can be driven without logging in.
+ */
+public interface Transport {
+
+    void addCommandListener(CommandListener listener);
+
+    Optional<Channel> getChannel(String id);
+
+    //Returns the user if they're known. Implementations must not block waiting for a lookup.
+    Optional<Author> getUser(String id);
+
+    //Returns the user's name, or their ID if they aren't known yet
+    default String getName(String id) {
+        return getUser(id).map(Author::getDisplayName).orElse(id);
+    }
+
+    //Shows a user by this name and avatar until the transport has looked them up itself, e.g. after a restart
+    default void remember(Author user) {
+    }
+
+    //Returns true if the user is in the voice channel, such as a campaign's session channel
+    boolean isInVoiceChannel(String channelID, String userID);
+
+    //Finishes sending any replies still on their way, waiting at most timeoutMillis for them, then disconnects
+    void disconnect(long timeoutMillis);
+}
@@ -0,0 +1,25 @@
+package transport;
+
+/**
+ * Holds the transport the bot is running on. TwoDee sets a DiscordTransport once it has logged in, and the load
+ * generator sets a FakeTransport.
+ */
+public class TransportRegistry {
+
+    private static volatile Transport current;
+
+    private TransportRegistry() {
+    }
+
+    public static Transport get() {
+        Transport transport = current;
+        if (transport == null) {
+            throw new IllegalStateException("No transport has been set");
+        }
+        return transport;
+    }
+
+    public static void set(Transport transport) {
+        current = transport;
+    }
+}
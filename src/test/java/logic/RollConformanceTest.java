@@ -0,0 +1,153 @@
+package logic;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that DiceRoller rolls what StatisticsGenerator says it will. Each pool is rolled many times and the totals and
+ * doom are compared against the exact distributions with a chi-square goodness-of-fit test. Outcomes the roller
+ * produces that the statistics say are impossible fail straight away.
+ * <p>
+ * The rolls use a fixed seed, so the test gives the same answer every run. The 0.1% significance level is for all the
+ * comparisons together: each one is tested at 0.1% divided by how many there are (Bonferroni), so adding pools doesn't
+ * make a false failure more likely.
+ */
+public class RollConformanceTest {
+
+    private static final String[] POOLS = {"d4", "d6 d8", "d8 d10 d12", "d4 d4 d4 d4", "d6 pd6", "d4 d8 pd8",
+            "d10 d12 pd4 pd6", "d6 d6 d8 d12 pd12", "d12 pd2"};
+    //Keep 3, exploding d12s and plot dice of at least three quarters of their size
+    private static final RollRules HOUSE_RULES = RollRules.of("3", "12", "3", "75");
+    private static final String[] HOUSE_POOLS = {"d12", "d8 d12 d12", "d4 d6 d8 d10 pd8", "d12 d12 d12 d12 pd6"};
+
+    private static final int SAMPLES = 200_000;
+    private static final long SEED = 20181019L;
+    private static final double SIGNIFICANCE = 0.001;
+    //Totals and doom for every pool
+    private static final int COMPARISONS = 2 * (POOLS.length + HOUSE_POOLS.length);
+    //Bins expected to get fewer samples than this are merged, since chi-square is unreliable for them
+    private static final double MIN_EXPECTED = 5;
+
+    @Test
+    public void standardRollsMatchStatistics() {
+        Random random = new Random(SEED);
+        List<String> failures = new ArrayList<>();
+        for (String pool : POOLS) {
+            checkDistribution(pool, RollRules.STANDARD, random, failures);
+        }
+        assertTrue(String.join("\n", failures), failures.isEmpty());
+    }
+
+    @Test
+    public void houseRollsMatchStatistics() {
+        Random random = new Random(SEED);
+        List<String> failures = new ArrayList<>();
+        for (String pool : HOUSE_POOLS) {
+            checkDistribution(pool, HOUSE_RULES, random, failures);
+        }
+        assertTrue(String.join("\n", failures), failures.isEmpty());
+    }
+
+    //Rolls the pool and compares its totals and doom with the exact distributions
+    private static void checkDistribution(String pool, RollRules rules, Random random, List<String> failures) {
+        StatisticsGenerator statistics = new StatisticsGenerator(pool, rules, false, () -> false,
+                StatisticsGenerator.NO_PROGRESS);
+        DiceRoller roller = new DiceRoller(pool, rules);
+        String name = rules == RollRules.STANDARD ? pool : "house " + pool;
+        HashMap<Integer, Integer> totals = new HashMap<>();
+        HashMap<Integer, Integer> doom = new HashMap<>();
+        ArrayList<Integer> diceResults = new ArrayList<>();
+        ArrayList<Integer> pdResults = new ArrayList<>();
+        ArrayList<Integer> topTwo = new ArrayList<>();
+        ArrayList<Integer> dropped = new ArrayList<>();
+        for (int i = 0; i < SAMPLES; i++) {
+            diceResults.clear();
+            pdResults.clear();
+            topTwo.clear();
+            dropped.clear();
+            //The roller keeps a running count of doom, so take the difference
+            int doomBefore = roller.getDoom();
+            int total = roller.roll(random, diceResults, pdResults, topTwo, dropped);
+            totals.merge(total, 1, Integer::sum);
+            doom.merge(roller.getDoom() - doomBefore, 1, Integer::sum);
+        }
+        chiSquare(name + " totals", statistics.getTotalProbabilities(), totals, failures);
+        chiSquare(name + " doom", statistics.getDoomProbabilities(), doom, failures);
+    }
+
+    private static void chiSquare(String name, Map<Integer, Double> percentages, Map<Integer, Integer> observed,
+                                  List<String> failures) {
+        for (Integer outcome : observed.keySet()) {
+            if (!percentages.containsKey(outcome)) {
+                failures.add(String.format("%s: rolled %d, which the statistics say is impossible", name, outcome));
+                return;
+            }
+        }
+        double statistic = 0;
+        int bins = 0;
+        double pooledExpected = 0;
+        int pooledObserved = 0;
+        for (Map.Entry<Integer, Double> outcome : percentages.entrySet()) {
+            double expected = outcome.getValue() / 100 * SAMPLES;
+            int count = observed.getOrDefault(outcome.getKey(), 0);
+            if (expected < MIN_EXPECTED) {
+                pooledExpected += expected;
+                pooledObserved += count;
+                continue;
+            }
+            statistic += (count - expected) * (count - expected) / expected;
+            bins++;
+        }
+        if (pooledExpected > 0) {
+            statistic += (pooledObserved - pooledExpected) * (pooledObserved - pooledExpected) / pooledExpected;
+            bins++;
+        }
+        int degreesOfFreedom = bins - 1;
+        if (degreesOfFreedom < 1) {
+            return;
+        }
+        double critical = criticalValue(degreesOfFreedom, SIGNIFICANCE / COMPARISONS);
+        if (statistic > critical) {
+            failures.add(String.format("%s: chi-square %.2f is over %.2f with %d degrees of freedom", name, statistic,
+                    critical, degreesOfFreedom));
+        }
+    }
+
+    //Wilson-Hilferty approximation of the chi-square critical value, accurate to well under 1% from 1 degree up
+    private static double criticalValue(int degreesOfFreedom, double significance) {
+        double z = upperNormalQuantile(significance);
+        double term = 2.0 / (9 * degreesOfFreedom);
+        return degreesOfFreedom * Math.pow(1 - term + z * Math.sqrt(term), 3);
+    }
+
+    //The z the standard normal distribution is above with the given probability, found by bisection
+    private static double upperNormalQuantile(double probability) {
+        double low = 0;
+        double high = 10;
+        for (int i = 0; i < 60; i++) {
+            double middle = (low + high) / 2;
+            if (erfc(middle / Math.sqrt(2)) / 2 > probability) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return (low + high) / 2;
+    }
+
+    //Complementary error function, with a relative error under 1.2e-7 (Numerical Recipes' erfcc)
+    private static double erfc(double x) {
+        double t = 1 / (1 + 0.5 * Math.abs(x));
+        double result = t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+                + t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 + t * (-0.82215223
+                + t * 0.17087277)))))))));
+        return x >= 0 ? result : 2 - result;
+    }
+}